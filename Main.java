@@ -5,9 +5,11 @@
 
 package run.bach;
 
+import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
+import run.bach.internal.ToolCallJournal;
 
 class Main {
   public static void main(String... args) {
@@ -18,6 +20,8 @@ class Main {
     var arguments = new ArrayDeque<>(List.of(args));
     var command = arguments.removeFirst();
     switch (command.toLowerCase()) {
+      case "prefetch" -> prefetch(arguments);
+      case "replay" -> replay(arguments);
       case "run" -> run(arguments.removeFirst(), arguments);
       case "status" -> System.out.println("TODO");
       default -> run(command, arguments);
@@ -29,14 +33,48 @@ class Main {
     tool.run(args -> args.addAll(arguments.stream()));
   }
 
+  private static void prefetch(Deque<String> arguments) { // <ID=URI|URI>...
+    var finder = ToolFinder.ofInstaller(ToolInstaller.Mode.INSTALL_ON_DEMAND);
+    for (var argument : arguments) {
+      var installer = installer(argument);
+      var id = installer.namespace() + '/' + installer.name() + '@' + installer.version();
+      finder = finder.with(id, installer);
+    }
+    var start = System.nanoTime();
+    for (var installation : finder.prefetch()) {
+      var millis = installation.duration().toMillis();
+      var id = installation.tool().identifier().toNamespaceAndNameAndVersion();
+      System.out.printf("%7d ms %s%n", millis, id);
+    }
+    System.out.printf("%7d ms total%n", (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private static void replay(Deque<String> arguments) { // [--parallel] [FILE]
+    var parallel = arguments.remove("--parallel");
+    var file = arguments.isEmpty() ? ToolCallJournal.ofSystem().file() : Path.of(arguments.pop());
+    var space = new ToolSpace(ToolFinder.ofSystem());
+    space.replay(file, parallel);
+  }
+
   private static Tool tool(String string) {
     var separator = string.indexOf('=');
     // <NAME>|<URI>
     if (separator == -1) return Tool.of(string);
     // <ID=URI>
+    return Tool.of(installer(string), ToolInstaller.Mode.INSTALL_IMMEDIATE);
+  }
+
+  private static ToolInstaller installer(String string) {
+    var separator = string.indexOf('=');
+    // <URI>
+    if (separator == -1) {
+      var installer = ToolInstaller.find(string);
+      if (installer.isPresent()) return installer.get();
+      throw new ToolNotFoundException("No installer found for: " + string);
+    }
+    // <ID=URI>
     var identifier = string.substring(0, separator);
     var source = string.substring(separator + 1);
-    var installer = ToolInstaller.ofJavaApplication(identifier, source);
-    return Tool.of(installer, ToolInstaller.Mode.INSTALL_IMMEDIATE);
+    return ToolInstaller.ofJavaApplication(identifier, source);
   }
 }
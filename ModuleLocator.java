@@ -5,8 +5,17 @@
 
 package run.bach;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 /** Connects zero or more module names to their locations, usually uniform resource identifiers. */
@@ -63,6 +72,15 @@ public interface ModuleLocator {
     return Location.of(name, location);
   }
 
+  /**
+   * {@return a locator backed by a properties-style catalog file of {@code name=uri} lines}
+   *
+   * @param file the path to the catalog file
+   */
+  static ModuleLocator ofCatalog(Path file) {
+    return CatalogLocator.load(file);
+  }
+
   static ModuleLocator compose(ModuleLocator... lookups) {
     return new CompositeLocator(List.of(lookups));
   }
@@ -86,4 +104,77 @@ public interface ModuleLocator {
       return new Location.Unknown(name);
     }
   }
+
+  /**
+   * A locator answering lookups via binary search in sorted arrays of module names and locations.
+   *
+   * <p>Locations are parsed on first lookup and cached afterwards.
+   */
+  final class CatalogLocator implements ModuleLocator {
+    static CatalogLocator load(Path file) {
+      var properties = new Properties();
+      try (var reader = Files.newBufferedReader(file)) {
+        properties.load(reader);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Loading catalog failed: " + file, exception);
+      }
+      var names = properties.stringPropertyNames().toArray(String[]::new);
+      Arrays.sort(names);
+      var locations = new String[names.length];
+      for (int i = 0; i < names.length; i++) locations[i] = properties.getProperty(names[i]);
+      return new CatalogLocator(names, locations);
+    }
+
+    private final String[] names;
+    private final String[] locations;
+    private final Location[] cache;
+    private final Set<String> set;
+
+    CatalogLocator(String[] names, String[] locations) {
+      this.names = names;
+      this.locations = locations;
+      this.cache = new Location[names.length];
+      this.set = Collections.unmodifiableSet(new NameSet(names));
+    }
+
+    @Override
+    public Set<String> names() {
+      return set;
+    }
+
+    @Override
+    public Location locate(String name) {
+      var index = Arrays.binarySearch(names, name);
+      if (index < 0) return new Location.Unknown(name);
+      var location = cache[index];
+      if (location == null) {
+        location = Location.of(name, locations[index]);
+        cache[index] = location; // racy but idempotent
+      }
+      return location;
+    }
+
+    private static final class NameSet extends AbstractSet<String> {
+      private final String[] names;
+
+      NameSet(String[] names) {
+        this.names = names;
+      }
+
+      @Override
+      public boolean contains(Object object) {
+        return object instanceof String name && Arrays.binarySearch(names, name) >= 0;
+      }
+
+      @Override
+      public Iterator<String> iterator() {
+        return Arrays.asList(names).iterator();
+      }
+
+      @Override
+      public int size() {
+        return names.length;
+      }
+    }
+  }
 }
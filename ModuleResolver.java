@@ -5,25 +5,44 @@
 
 package run.bach;
 
-import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleReference;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 import jdk.jfr.Category;
 import jdk.jfr.Name;
 import jdk.jfr.StackTrace;
+import run.bach.internal.Downloader;
+import run.bach.internal.ModuleDescriptorIndex;
+import run.bach.internal.ModuleLock;
 import run.bach.internal.ModulesSupport;
-import run.bach.internal.PathSupport;
 
 public interface ModuleResolver {
   void resolveModule(String name);
 
   void resolveMissingModules();
 
+  /**
+   * Verifies that all modules recorded in the lock file are present and unchanged.
+   *
+   * <p>The default implementation does nothing: resolvers without a lock file have nothing to
+   * verify.
+   *
+   * @throws IllegalStateException if any locked module is missing or was modified
+   */
+  default void verifyModules() {}
+
   static ModuleResolver ofSingleDirectory(Path directory, ModuleLocator locator) {
     return new CanonicalResolver(directory, locator);
   }
@@ -31,7 +50,10 @@ public interface ModuleResolver {
   record CanonicalResolver(Path directory, ModuleLocator locator) implements ModuleResolver {
     @Override
     public void resolveModule(String name) {
-      var module = ModuleFinder.of(directory).find(name);
+      var jar = directory.resolve(name + ".jar");
+      var index = ModuleDescriptorIndex.ofSystem();
+      var finder = Files.isRegularFile(jar) ? index.finder(jar) : index.finder(directory);
+      var module = finder.find(name);
       if (module.isPresent()) {
         Event.AlreadyResolved.commit(module.get());
         return;
@@ -40,33 +62,108 @@ public interface ModuleResolver {
       if (located instanceof ModuleLocator.Location.Uniform location) {
         var source = location.uri();
         var target = directory.resolve(name + ".jar");
+        var lock = ModuleLock.read(directory);
+        var expected = lock.find(name, source).orElse(null);
         var event = Event.ResolveModule.begin(name, source, target);
-        PathSupport.copy(target, source);
+        var download = Downloader.ofSystem().download(target, source, expected);
         event.commit();
+        lock.lock(name, source, target, download.size(), download.sha256());
+        lock.write();
         return;
       }
       throw new UnsupportedOperationException(located.toString());
     }
 
+    /**
+     * Resolves missing modules in waves until no module is missing.
+     *
+     * <p>The directory is scanned once. Each wave downloads all currently missing modules
+     * concurrently and reads the descriptor of each downloaded module exactly once.
+     */
     @Override
     public void resolveMissingModules() {
-      var resolved = new TreeSet<String>();
-      var difference = new TreeSet<String>();
       var event = new Event.ResolveModules();
       event.begin();
+      var system = ModulesSupport.declaredSystemModuleNames();
+      var index = ModuleDescriptorIndex.ofSystem();
+      var declared = new TreeSet<String>();
+      var required = new TreeSet<String>();
+      for (var reference : index.finder(directory).findAll()) {
+        declare(reference.descriptor(), declared, required);
+      }
+      var resolved = new TreeSet<String>();
       while (true) {
-        var finders = List.of(ModuleFinder.of(directory)); // recreate in every loop
-        var missing = ModulesSupport.listMissingNames(finders, Set.of());
+        var missing = new TreeSet<>(required);
+        missing.removeAll(system);
+        missing.removeAll(declared);
         if (missing.isEmpty()) break;
-        difference.retainAll(missing);
+        var difference = new TreeSet<>(missing);
+        difference.retainAll(resolved);
         if (!difference.isEmpty()) throw new IllegalStateException("Still missing?! " + difference);
-        difference.addAll(missing);
-        missing.forEach(this::resolveModule);
+        var lock = ModuleLock.read(directory);
+        for (var entry : resolveWave(missing, lock).entrySet()) {
+          var download = entry.getValue();
+          var target = download.target();
+          for (var reference : index.finder(target).findAll()) {
+            declare(reference.descriptor(), declared, required);
+          }
+          lock.lock(entry.getKey(), download.source(), target, download.size(), download.sha256());
+        }
+        lock.write();
         resolved.addAll(missing);
       }
       event.commit(resolved);
     }
 
+    @Override
+    public void verifyModules() {
+      var lock = ModuleLock.read(directory);
+      var problems = lock.verify();
+      if (!problems.isEmpty()) {
+        throw new IllegalStateException("Verification failed:\n" + String.join("\n", problems));
+      }
+      lock.write(); // remember last-modified times of rehashed files
+    }
+
+    private Map<String, Downloader.Download> resolveWave(
+        Collection<String> names, ModuleLock lock) {
+      var downloads = new TreeMap<String, Downloader.Download>();
+      var futures = new TreeMap<String, Future<Downloader.Download>>();
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (var name : names) {
+          var located = locator.locate(name);
+          if (!(located instanceof ModuleLocator.Location.Uniform location)) {
+            throw new UnsupportedOperationException(located.toString());
+          }
+          var source = location.uri();
+          var target = directory.resolve(name + ".jar");
+          var expected = lock.find(name, source).orElse(null);
+          Callable<Downloader.Download> download =
+              () -> {
+                var event = Event.ResolveModule.begin(name, source, target);
+                var completed = Downloader.ofSystem().download(target, source, expected);
+                event.commit();
+                return completed;
+              };
+          futures.put(name, executor.submit(download));
+        }
+        for (var entry : futures.entrySet()) downloads.put(entry.getKey(), entry.getValue().get());
+      } catch (ExecutionException exception) {
+        if (exception.getCause() instanceof RuntimeException cause) throw cause;
+        throw new RuntimeException(exception.getCause());
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while resolving modules", exception);
+      }
+      return downloads;
+    }
+
+    private static void declare(
+        ModuleDescriptor descriptor, Set<String> declared, Set<String> required) {
+      declared.add(descriptor.name());
+      required.addAll(ModulesSupport.required(Stream.of(descriptor)));
+    }
+
     @Category("Bach")
     @StackTrace(false)
     abstract static sealed class Event extends jdk.jfr.Event {
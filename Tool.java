@@ -6,13 +6,14 @@
 package run.bach;
 
 import java.io.PrintWriter;
-import java.lang.module.ModuleFinder;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.UnaryOperator;
 import java.util.spi.ToolProvider;
 import java.util.stream.Stream;
+import run.bach.internal.ModuleDescriptorIndex;
 
 /**
  * Links tool-identifying names to an instance of a tool provider interface implementation.
@@ -44,7 +45,7 @@ public record Tool(Identifier identifier, ToolProvider provider) {
       return Tool.of(identifier, program.get());
     }
     // Try with loading a tool provider from modules in lib/ directory.
-    var loaded = ToolFinder.of(ModuleFinder.of(Path.of("lib"))).find(name);
+    var loaded = ToolFinder.of(ModuleDescriptorIndex.ofSystem().finder(Path.of("lib"))).find(name);
     if (loaded.isPresent()) {
       return loaded.get();
     }
@@ -214,12 +215,25 @@ public record Tool(Identifier identifier, ToolProvider provider) {
     ToolProvider supplyToolProvider() throws Exception;
   }
 
-  /** A tool provider implementation delegating to another provider at run-time. */
+  /**
+   * A tool provider implementation delegating to another provider at run-time.
+   *
+   * <p>The supplied provider is memoized after it was supplied successfully for the first time.
+   */
   record ProviderFacade(String name, ToolProviderSupplier delegate) implements ToolProvider {
+    ProviderFacade {
+      if (!(delegate instanceof MemoizingSupplier)) delegate = new MemoizingSupplier(delegate);
+    }
+
+    /** {@return the memoized provider or the one supplied by the delegate} */
+    ToolProvider resolve() throws Exception {
+      return delegate.supplyToolProvider();
+    }
+
     @Override
     public int run(PrintWriter out, PrintWriter err, String... args) {
       try {
-        var provider = delegate.supplyToolProvider();
+        var provider = resolve();
         return provider.run(out, err, args);
       } catch (Exception exception) {
         exception.printStackTrace(err);
@@ -227,4 +241,22 @@ public record Tool(Identifier identifier, ToolProvider provider) {
       }
     }
   }
+
+  /** A supplier holding on to the first tool provider supplied successfully by another one. */
+  private static final class MemoizingSupplier implements ToolProviderSupplier {
+    private final ToolProviderSupplier supplier;
+    private final AtomicReference<ToolProvider> provider = new AtomicReference<>();
+
+    MemoizingSupplier(ToolProviderSupplier supplier) {
+      this.supplier = supplier;
+    }
+
+    @Override
+    public ToolProvider supplyToolProvider() throws Exception {
+      var memoized = provider.get();
+      if (memoized != null) return memoized;
+      var supplied = supplier.supplyToolProvider();
+      return provider.compareAndSet(null, supplied) ? supplied : provider.get();
+    }
+  }
 }
@@ -5,18 +5,31 @@
 
 package run.bach;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.FileAlreadyExistsException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.spi.ToolProvider;
 import java.util.stream.Stream;
+import run.bach.internal.ContentStore;
+import run.bach.internal.InstalledToolIndex;
 import run.bach.internal.JavaApplicationInstaller;
-import run.bach.internal.PathSupport;
 
 /** An interface for installers to fetch required files and compose them into a tool provider. */
 public interface ToolInstaller {
@@ -68,31 +81,58 @@ public interface ToolInstaller {
     }
     var folder = base.resolve(path).resolve(identifier.toNameAndVersion()).normalize();
     return switch (mode) {
-      case INSTALL_IMMEDIATE -> Tool.of(identifier, install(this, folder));
-      case INSTALL_ON_DEMAND -> Tool.of(identifier, () -> install(this, folder));
+      case INSTALL_IMMEDIATE -> Tool.of(identifier, install(this, base, folder, identifier));
+      case INSTALL_ON_DEMAND ->
+          Tool.of(identifier, () -> install(this, base, folder, identifier));
     };
   }
 
   default void download(Path target, URI source) throws IOException {
-    PathSupport.copy(target, source);
+    if (Files.exists(target)) return;
+    ContentStore.ofSystem().download(target, source);
+  }
+
+  private static ToolProvider install(
+      ToolInstaller installer, Path base, Path directory, Tool.Identifier identifier) {
+    // only records describe their entire configuration, like an in-process flag, in toString()
+    if (!(installer instanceof Record)) return install(installer, directory);
+    // fast path: reuse the recipe of a tool program recorded by a previous run
+    var index = InstalledToolIndex.of(base);
+    var folder = base.relativize(directory).toString().replace('\\', '/');
+    var key = folder + '#' + installer;
+    var marker = directory.resolve(".installed");
+    var indexed = index.find(key, marker);
+    if (indexed.isPresent()) return indexed.get();
+    var provider = install(installer, directory);
+    if (provider instanceof ToolProgram program) index.record(key, marker, program);
+    return provider;
   }
 
   private static ToolProvider install(ToolInstaller installer, Path directory) {
+    var marker = directory.resolve(".installed");
     try {
-      Files.createDirectories(directory);
-      var lockfile = directory.resolve(".lockfile");
+      // fast path: a previous run completed the installation
+      if (Files.exists(marker)) return installer.install(directory);
+      // guard against concurrent installations within this JVM...
+      class Stripes {
+        static final ReentrantLock[] LOCKS =
+            Stream.generate(ReentrantLock::new).limit(64).toArray(ReentrantLock[]::new);
+      }
+      var hash = directory.toAbsolutePath().normalize().hashCode();
+      var stripe = Stripes.LOCKS[Math.floorMod(hash, Stripes.LOCKS.length)];
+      stripe.lock();
       try {
-        try {
-          Files.createFile(lockfile);
-        } catch (FileAlreadyExistsException exception) {
-          while (Files.exists(lockfile)) {
-            // noinspection BusyWait
-            Thread.sleep(1234);
-          }
+        Files.createDirectories(directory);
+        var lockfile = directory.resolve(".lockfile");
+        // ...and across processes, the operating system releases the lock of crashed processes
+        try (var channel = FileChannel.open(lockfile, CREATE, WRITE);
+            var _ = channel.lock()) {
+          var provider = installer.install(directory);
+          if (Files.notExists(marker)) Files.writeString(marker, Instant.now().toString());
+          return provider;
         }
-        return installer.install(directory);
       } finally {
-        Files.deleteIfExists(lockfile);
+        stripe.unlock();
       }
     } catch (Exception exception) {
       throw new RuntimeException(exception);
@@ -133,6 +173,14 @@ public interface ToolInstaller {
     public static final Mode DEFAULT = INSTALL_ON_DEMAND;
   }
 
+  /**
+   * Describes a completed installation of a tool.
+   *
+   * @param tool the installed tool
+   * @param duration the time it took to install the tool
+   */
+  record Installation(Tool tool, Duration duration) {}
+
   record Finder(List<Tool> tools, Mode mode, Path installationHomeDirectory) implements ToolFinder {
     public Finder with(ToolInstaller installer) {
       var identifier = Tool.Identifier.of(installer);
@@ -151,6 +199,92 @@ public interface ToolInstaller {
       return with(identifier, installer);
     }
 
+    /**
+     * Installs all tools of this finder that are not installed, yet, concurrently.
+     *
+     * <p>The number of simultaneous installations is read from the {@code --install-concurrency}
+     * system property, which defaults to 8.
+     *
+     * @return a list of completed installations
+     */
+    public List<Installation> prefetch() {
+      return prefetch(concurrency());
+    }
+
+    /**
+     * Installs all tools of this finder that are not installed, yet, concurrently.
+     *
+     * @param parallelism the maximum number of simultaneous installations
+     * @return a list of completed installations
+     */
+    public List<Installation> prefetch(int parallelism) {
+      var installations = new ArrayList<Callable<Installation>>();
+      for (var tool : tools) {
+        if (!(tool.provider() instanceof Tool.ProviderFacade facade)) continue;
+        installations.add(
+            () -> {
+              var start = System.nanoTime();
+              facade.resolve();
+              return new Installation(tool, Duration.ofNanos(System.nanoTime() - start));
+            });
+      }
+      return callConcurrently(installations, parallelism, "Prefetch");
+    }
+
+    /**
+     * {@return a new finder with the given installers added}
+     *
+     * <p>In {@link Mode#INSTALL_IMMEDIATE} mode, all tools are installed concurrently like {@link
+     * #prefetch()} does for tools installed on demand, instead of one after the other when adding
+     * them one by one.
+     *
+     * @param installers the list of installers to add
+     */
+    public Finder withAll(List<? extends ToolInstaller> installers) {
+      var installations = new ArrayList<Callable<Tool>>();
+      for (var installer : installers) {
+        var identifier = Tool.Identifier.of(installer);
+        installations.add(() -> installer.install(installationHomeDirectory, identifier, mode));
+      }
+      var parallelism = mode == Mode.INSTALL_IMMEDIATE ? concurrency() : 1;
+      var installed = callConcurrently(installations, parallelism, "Installation");
+      var tools = Stream.concat(tools().stream(), installed.stream()).toList();
+      return new Finder(tools, mode, installationHomeDirectory);
+    }
+
+    /** {@return the maximum number of simultaneous installations, defaults to 8} */
+    private static int concurrency() {
+      return Integer.getInteger("--install-concurrency", 8);
+    }
+
+    private static <T> List<T> callConcurrently(
+        List<Callable<T>> callables, int parallelism, String description) {
+      var permits = new Semaphore(Math.max(1, parallelism));
+      var results = new ArrayList<T>();
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        var futures = new ArrayList<Future<T>>();
+        for (var callable : callables) {
+          Callable<T> bounded =
+              () -> {
+                permits.acquire();
+                try {
+                  return callable.call();
+                } finally {
+                  permits.release();
+                }
+              };
+          futures.add(executor.submit(bounded));
+        }
+        for (var future : futures) results.add(future.get());
+      } catch (ExecutionException exception) {
+        throw new RuntimeException(description + " failed", exception.getCause());
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(description + " interrupted", exception);
+      }
+      return List.copyOf(results);
+    }
+
     private Finder with(Tool.Identifier identifier, ToolInstaller installer) {
       var tool = installer.install(installationHomeDirectory, identifier, mode);
       var tools = Stream.concat(tools().stream(), Stream.of(tool)).toList();
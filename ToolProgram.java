@@ -132,9 +132,17 @@ public record ToolProgram(
     try {
       var process = processBuilderTweaker.tweak(processBuilder).start();
       var threadBuilder = Thread.ofVirtual();
-      threadBuilder.name(name + "-out").start(new LinePrinter(process.getInputStream(), out));
-      threadBuilder.name(name + "-err").start(new LinePrinter(process.getErrorStream(), err));
-      return process.isAlive() ? processWaiter().waitFor(process) : process.exitValue();
+      var outPrinter = new LinePrinter(process.getInputStream(), out);
+      var errPrinter = new LinePrinter(process.getErrorStream(), err);
+      var printers =
+          List.of(
+              threadBuilder.name(name + "-out").start(outPrinter),
+              threadBuilder.name(name + "-err").start(errPrinter));
+      var code = process.isAlive() ? processWaiter().waitFor(process) : process.exitValue();
+      if (!process.isAlive()) {
+        for (var printer : printers) printer.join(); // drain all output before returning
+      }
+      return code;
     } catch (InterruptedException exception) {
       Thread.currentThread().interrupt();
       return -1;
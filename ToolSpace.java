@@ -11,19 +11,25 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.EnumSet;
 import java.util.Set;
 import run.bach.internal.FlightRecorderEvent;
+import run.bach.internal.ToolCallJournal;
 
 /** Extendable tool runner implementation. */
 public class ToolSpace implements ToolRunner {
   public enum Flag {
-    SILENT
+    SILENT,
+    JOURNAL
   }
 
   protected final ToolFinder finder;
   protected final Level threshold;
   protected final Set<Flag> flags;
+  protected final Path journal;
 
   public ToolSpace(Flag... flags) {
     this(ToolFinder.ofSystem(), Level.INFO, flags);
@@ -34,6 +40,18 @@ public class ToolSpace implements ToolRunner {
   }
 
   public ToolSpace(ToolFinder finder, Level threshold, Flag... flags) {
+    this(finder, threshold, ToolCallJournal.ofSystem().file(), flags);
+  }
+
+  /**
+   * Creates a tool space.
+   *
+   * @param finder the finder instance to be used for finding tools by name
+   * @param threshold the minimal level of messages to log
+   * @param journal the file to record tool calls to, if the journal flag is present
+   * @param flags the flags of this space
+   */
+  public ToolSpace(ToolFinder finder, Level threshold, Path journal, Flag... flags) {
     this.finder = finder;
     this.threshold = threshold;
     this.flags =
@@ -42,12 +60,17 @@ public class ToolSpace implements ToolRunner {
           case 1 -> EnumSet.of(flags[0]);
           default -> EnumSet.of(flags[0], flags);
         };
+    this.journal = journal;
   }
 
   public final boolean silent() {
     return flags.contains(Flag.SILENT);
   }
 
+  public final boolean journaled() {
+    return flags.contains(Flag.JOURNAL);
+  }
+
   @Override
   public ToolRun run(ToolCall call) {
     announce(call);
@@ -64,6 +87,8 @@ public class ToolSpace implements ToolRunner {
       event.args = String.join(" ", args);
 
       Thread.currentThread().setContextClassLoader(provider.getClass().getClassLoader());
+      var begin = Instant.now();
+      var start = System.nanoTime();
       try {
         event.begin();
         event.code = provider.run(out, err, args);
@@ -74,6 +99,15 @@ public class ToolSpace implements ToolRunner {
         event.end();
         event.out = out.toString();
         event.err = err.toString();
+        if (journaled()) {
+          var duration = Duration.ofNanos(System.nanoTime() - start);
+          try {
+            record(call, begin, duration, event.code);
+          } catch (RuntimeException exception) {
+            // never let a journal failure replace the outcome of the tool run
+            log(Level.WARNING, "Recording tool call failed: " + exception);
+          }
+        }
       }
 
       var run = new ToolRun(call, tool, event.code, event.out, event.err);
@@ -85,6 +119,18 @@ public class ToolSpace implements ToolRunner {
     }
   }
 
+  /**
+   * Re-executes all tool calls recorded in the given journal file, finding tools with this space.
+   *
+   * @param file the journal file to read recorded tool calls from
+   * @param parallel whether to run independent tool calls concurrently
+   * @return the duration of the replay
+   * @see ToolCallJournal#replay(ToolRunner, boolean)
+   */
+  public Duration replay(Path file, boolean parallel) {
+    return new ToolCallJournal(file).replay(this, parallel);
+  }
+
   @Override
   public void log(Level level, String message) {
     // TODO Fire flight recorder event.
@@ -118,6 +164,17 @@ public class ToolSpace implements ToolRunner {
     };
   }
 
+  protected Path computeJournalFile() {
+    return journal;
+  }
+
+  protected void record(ToolCall call, Instant begin, Duration duration, int code) {
+    var name = call.tool().name();
+    var directory = Path.of("").toAbsolutePath();
+    var entry = new ToolCallJournal.Entry(name, call.arguments(), directory, begin, duration, code);
+    new ToolCallJournal(computeJournalFile()).append(entry);
+  }
+
   protected String[] computeArgumentsArray(ToolCall call) {
     return call.arguments().toArray(String[]::new);
   }
@@ -6,6 +6,7 @@
 package run.bach.info;
 
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.StringJoiner;
 
 /** Maven component representation. */
@@ -34,7 +35,16 @@ public record MavenCoordinate(
   public URI toUri() {
     var joiner = new StringJoiner("/").add("https://" + repository);
     joiner.add(group.replace('.', '/')).add(artifact).add(version);
+    return URI.create(joiner.add(toFileName()).toString());
+  }
+
+  /** {@return the path of this component relative to the root of a Maven 2 repository layout} */
+  public Path toPath() {
+    return Path.of(group.replace('.', '/'), artifact, version, toFileName());
+  }
+
+  public String toFileName() {
     var file = artifact + '-' + (classifier.isBlank() ? version : version + '-' + classifier);
-    return URI.create(joiner.add(file + '.' + type).toString());
+    return file + '.' + type;
   }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A machine-wide, content-addressed store of files keyed by their SHA-256 digest.
+ *
+ * <p>Blobs are stored as {@code sha256/<2 hex digits>/<64 hex digits>} below the root directory.
+ * An index in {@code sources/} maps digests of source locations to blob digests and sizes. Files
+ * placed into the store are linked back to their original location: hard links are preferred,
+ * symbolic links and plain copies are used as fallbacks.
+ *
+ * <p>An indexed blob is only used if it exists, has the recorded size, and its content still
+ * matches its digest; the digest is recomputed whenever the blob's size or last-modified time
+ * changed. Index entries failing these checks are deleted and the source is downloaded again.
+ * Sources of changing content, like {@code -SNAPSHOT} artifacts, are never looked up in the index.
+ *
+ * <p>The store is not evicted automatically. Deleting the entire root directory, or any of its
+ * files, is safe while no build is running: a missing blob or index entry causes a download, and
+ * files linked into installation directories via hard links or copies keep their content. Only
+ * files linked via symbolic links, which are used where hard links are not supported, need to be
+ * installed again.
+ *
+ * @param root the root directory of the store
+ */
+public record ContentStore(Path root) {
+  /** {@code ~/.bach/store} unless overridden via the {@code --content-store} system property */
+  public static ContentStore ofSystem() {
+    var home = Path.of(System.getProperty("user.home", ""));
+    var root = System.getProperty("--content-store");
+    return new ContentStore(root != null ? Path.of(root) : home.resolve(".bach").resolve("store"));
+  }
+
+  public Path blob(String sha256) {
+    return root.resolve("sha256").resolve(sha256.substring(0, 2)).resolve(sha256);
+  }
+
+  /**
+   * Links the target to a stored blob of the given source or downloads it into the store.
+   *
+   * @param target the path of the file to create
+   * @param source the location to download from when no stored blob is known for it
+   */
+  public void download(Path target, URI source) {
+    var stored = find(source);
+    if (stored.isPresent()) {
+      link(stored.get(), target);
+      return;
+    }
+    var download = Downloader.ofSystem().download(target, source);
+    adopt(target, download.sha256());
+    if (isChanging(source)) return;
+    remember(source, download.sha256(), download.size());
+  }
+
+  /**
+   * {@return the path to the intact stored blob previously downloaded from the given source}
+   *
+   * <p>An index entry pointing to a missing, resized, or modified blob is deleted.
+   */
+  public Optional<Path> find(URI source) {
+    if (isChanging(source)) return Optional.empty();
+    var index = index(source);
+    if (Files.notExists(index)) return Optional.empty();
+    try {
+      var elements = Files.readString(index).strip().split(" ");
+      if (elements.length == 2) {
+        var sha256 = elements[0];
+        var blob = blob(sha256);
+        if (Files.isRegularFile(blob)
+            && Files.size(blob) == Long.parseLong(elements[1])
+            && sha256.equals(DigestCache.of(root).sha256(List.of(blob)).get(blob))) {
+          return Optional.of(blob);
+        }
+      }
+      Files.deleteIfExists(index); // stale, damaged, or written by an older version
+    } catch (IOException | RuntimeException exception) {
+      // fall through and download again
+    }
+    return Optional.empty();
+  }
+
+  /** {@return {@code true} if the content behind the given source may change over time} */
+  static boolean isChanging(URI source) {
+    return source.toString().contains("-SNAPSHOT");
+  }
+
+  /**
+   * Moves a file into the store, unless an identical blob is already present, and replaces the
+   * file with a link to its blob.
+   *
+   * @param file the file to put into the store
+   * @param sha256 the hex-encoded SHA-256 digest of the file's content
+   * @return the path to the blob
+   */
+  public Path adopt(Path file, String sha256) {
+    var blob = blob(sha256);
+    try {
+      if (Files.notExists(blob)) {
+        PathSupport.writeAtomically(blob, stream -> Files.copy(file, stream));
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Storing file failed: " + file, exception);
+    }
+    link(blob, file);
+    return blob;
+  }
+
+  /**
+   * Creates or replaces the target file with a link to the given blob.
+   *
+   * @param blob the path to the stored blob
+   * @param target the path of the file to link
+   */
+  public void link(Path blob, Path target) {
+    try {
+      var parent = target.toAbsolutePath().getParent();
+      if (parent != null) Files.createDirectories(parent);
+      var temporary = target.resolveSibling(target.getFileName() + ".link");
+      Files.deleteIfExists(temporary);
+      try {
+        Files.createLink(temporary, blob);
+      } catch (IOException | UnsupportedOperationException exception) {
+        try {
+          Files.createSymbolicLink(temporary, blob.toAbsolutePath());
+        } catch (IOException | UnsupportedOperationException fallback) {
+          Files.copy(blob, temporary);
+        }
+      }
+      PathSupport.moveAtomically(temporary, target);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Linking blob failed: " + target, exception);
+    }
+  }
+
+  private void remember(URI source, String sha256, long size) {
+    var index = index(source);
+    try {
+      var line = (sha256 + ' ' + size).getBytes(StandardCharsets.UTF_8);
+      PathSupport.writeAtomically(index, stream -> stream.write(line));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Indexing source failed: " + source, exception);
+    }
+  }
+
+  private Path index(URI source) {
+    try {
+      var md = MessageDigest.getInstance("SHA-256");
+      var digest = md.digest(source.toString().getBytes(StandardCharsets.UTF_8));
+      return root.resolve("sources").resolve(HexFormat.of().formatHex(digest));
+    } catch (Exception exception) {
+      throw new RuntimeException(exception);
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent cache of SHA-256 digests of files.
+ *
+ * <p>Each entry is keyed by the absolute path of a file and records the file's size, last-modified
+ * time, and digest. A cached digest is used without reading the file while its size and
+ * last-modified time match the recorded values. Files modified less than two seconds before they
+ * were hashed are not cached, as a later modification within the resolution of the file system's
+ * time stamps would go unnoticed.
+ *
+ * <p>New entries are kept in memory and written to the cache file by {@link #flush()}, which is
+ * called at the end of a build and when the JVM shuts down.
+ *
+ * @param file the path to the cache file
+ * @param entries the map of absolute file paths to their entries
+ * @param dirty the flag indicating entries not yet written to the cache file
+ */
+public record DigestCache(Path file, Map<Path, Entry> entries, AtomicBoolean dirty) {
+  public static final String FILE_NAME = "digests.cache";
+
+  private static final long RACY_MILLIS = 2_000;
+
+  private static final Map<Path, DigestCache> CACHES = new ConcurrentHashMap<>();
+
+  /**
+   * A cached digest.
+   *
+   * @param size the size of the file in bytes
+   * @param modified the last-modified time of the file in milliseconds
+   * @param sha256 the hex-encoded SHA-256 digest of the file
+   */
+  public record Entry(long size, long modified, String sha256) {
+    String toLine(Path path) {
+      return String.join(" ", "" + size, "" + modified, sha256, path.toString());
+    }
+
+    static Map.Entry<Path, Entry> ofLine(String line) {
+      var elements = line.split(" ", 4);
+      var entry = new Entry(Long.parseLong(elements[0]), Long.parseLong(elements[1]), elements[2]);
+      return Map.entry(Path.of(elements[3]), entry);
+    }
+  }
+
+  /** {@return the cache stored in the given directory, loaded once per JVM} */
+  public static DigestCache of(Path directory) {
+    var file = directory.resolve(FILE_NAME).toAbsolutePath().normalize();
+    return CACHES.computeIfAbsent(file, DigestCache::load);
+  }
+
+  /** Writes all caches loaded in this JVM that have unwritten entries. */
+  public static void flushAll() {
+    CACHES.values().forEach(DigestCache::flush);
+  }
+
+  private static DigestCache load(Path file) {
+    var entries = new ConcurrentHashMap<Path, Entry>();
+    if (Files.isRegularFile(file)) {
+      try {
+        for (var line : Files.readAllLines(file)) {
+          if (line.isBlank() || line.startsWith("#")) continue;
+          var entry = Entry.ofLine(line);
+          entries.put(entry.getKey(), entry.getValue());
+        }
+      } catch (IOException | RuntimeException exception) {
+        entries.clear(); // start over with an empty cache
+      }
+    }
+    var cache = new DigestCache(file, entries, new AtomicBoolean());
+    Runtime.getRuntime().addShutdownHook(new Thread(cache::flush, "digest-cache-flush"));
+    return cache;
+  }
+
+  /**
+   * {@return a map of the given files to their hex-encoded SHA-256 digests}
+   *
+   * <p>Files without a usable cached digest are hashed in parallel.
+   *
+   * @param files the regular files to compute the digests of
+   */
+  public Map<Path, String> sha256(Collection<Path> files) {
+    var digests = new HashMap<Path, String>();
+    var pending = new HashMap<Path, BasicFileAttributes>();
+    for (var file : files) {
+      try {
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        var known = entries.get(file.toAbsolutePath().normalize());
+        if (known != null
+            && known.size() == attributes.size()
+            && known.modified() == attributes.lastModifiedTime().toMillis()) {
+          digests.put(file, known.sha256());
+          continue;
+        }
+        pending.put(file, attributes);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Reading attributes failed: " + file, exception);
+      }
+    }
+    if (pending.isEmpty()) return digests;
+    var checksums = PathSupport.checksums(pending.keySet(), "SHA-256");
+    var racy = System.currentTimeMillis() - RACY_MILLIS;
+    for (var file : pending.keySet()) {
+      var sha256 = checksums.get(file).get("SHA-256");
+      digests.put(file, sha256);
+      var size = pending.get(file).size();
+      var modified = pending.get(file).lastModifiedTime().toMillis();
+      if (modified > racy) continue;
+      entries.put(file.toAbsolutePath().normalize(), new Entry(size, modified, sha256));
+      dirty.set(true);
+    }
+    return digests;
+  }
+
+  /** Writes the cache file if entries were added since it was last written. */
+  public void flush() {
+    if (!dirty.getAndSet(false)) return;
+    try {
+      write();
+    } catch (UncheckedIOException exception) {
+      dirty.set(true); // try again on next flush
+    }
+  }
+
+  /** Writes all entries of files that still exist to the cache file. */
+  public synchronized void write() {
+    var lines = new ArrayList<String>();
+    lines.add("# size modified sha256 path");
+    for (var entry : new TreeMap<>(entries).entrySet()) {
+      var path = entry.getKey();
+      if (Files.notExists(path)) {
+        entries.remove(path);
+        continue;
+      }
+      lines.add(entry.getValue().toLine(path));
+    }
+    try {
+      var separator = System.lineSeparator();
+      var bytes = (String.join(separator, lines) + separator).getBytes(StandardCharsets.UTF_8);
+      PathSupport.writeAtomically(file, stream -> stream.write(bytes));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing cache failed: " + file, exception);
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import run.bach.info.PackageUrl;
+
+/**
+ * A download engine sharing a single HTTP client and bounding the number of concurrent transfers.
+ *
+ * <p>Files are streamed into a temporary sibling of the target while being hashed, verified against
+ * an expected digest if one is given, and moved into place atomically once complete. An
+ * interrupted transfer is kept as a {@code .part} sibling of the target and resumed via an HTTP
+ * range request. Files present in the local Maven repository are hard-linked or copied from there
+ * instead of being downloaded.
+ */
+public final class Downloader {
+  /** {@return the shared downloader instance using the system-default concurrency} */
+  public static Downloader ofSystem() {
+    class SystemDownloader {
+      static final Downloader SINGLETON = of(Integer.getInteger("--download-concurrency", 8));
+    }
+    return SystemDownloader.SINGLETON;
+  }
+
+  /**
+   * {@return a new downloader instance}
+   *
+   * @param concurrency the maximum number of simultaneous transfers
+   */
+  public static Downloader of(int concurrency) {
+    return of(concurrency, LocalRepository.ofSystem());
+  }
+
+  /**
+   * {@return a new downloader instance}
+   *
+   * @param concurrency the maximum number of simultaneous transfers
+   * @param repository the local Maven repository to look up files in before downloading them
+   */
+  public static Downloader of(int concurrency, LocalRepository repository) {
+    var client =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    return new Downloader(client, concurrency, repository);
+  }
+
+  /**
+   * Describes a completed download.
+   *
+   * @param target the path of the downloaded file
+   * @param source the location the file was downloaded from
+   * @param size the number of bytes of the file
+   * @param sha256 the hex-encoded SHA-256 digest of the file
+   */
+  public record Download(Path target, URI source, long size, String sha256) {}
+
+  private final HttpClient client;
+  private final Semaphore permits;
+  private final LocalRepository repository;
+
+  private Downloader(HttpClient client, int concurrency, LocalRepository repository) {
+    this.client = client;
+    this.permits = new Semaphore(concurrency);
+    this.repository = repository;
+  }
+
+  /**
+   * Downloads a single file, blocking until it is in place.
+   *
+   * @param target the path of the file to create or replace
+   * @param source the location to download from, supports {@code http(s)}, {@code file}, and
+   *     {@code pkg} schemes
+   * @return a description of the completed download
+   */
+  public Download download(Path target, URI source) {
+    return download(target, source, null);
+  }
+
+  /**
+   * Downloads a single file, blocking until it is in place, and verifies its content.
+   *
+   * <p>Each call transfers into a temporary file of its own. An interrupted transfer of an earlier
+   * call, left behind as a {@code .part} sibling of the target, is claimed by atomically renaming
+   * it, so at most one concurrent call resumes it.
+   *
+   * @param target the path of the file to create or replace
+   * @param source the location to download from, supports {@code http(s)}, {@code file}, and
+   *     {@code pkg} schemes
+   * @param sha256 the expected hex-encoded SHA-256 digest of the file, or {@code null} to accept
+   *     any content
+   * @return a description of the completed download
+   * @throws IllegalStateException if the digest of the downloaded file doesn't match
+   */
+  public Download download(Path target, URI source, String sha256) {
+    var uri = source.getScheme().equals("pkg") ? PackageUrl.parse(source).toUri() : source;
+    var local = repository.find(source);
+    try {
+      permits.acquire();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for download: " + uri);
+    }
+    Path temporary = null;
+    try {
+      var parent = target.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      var partial = target.resolveSibling(target.getFileName() + ".part");
+      temporary = Files.createTempFile(parent, target.getFileName().toString(), ".part");
+      var digest = MessageDigest.getInstance("SHA-256");
+      var remote = local.isEmpty() && uri.getScheme().startsWith("http");
+      if (remote) claim(partial, temporary);
+      long size;
+      try {
+        size =
+            local.isPresent()
+                ? link(local.get(), temporary, digest)
+                : remote
+                    ? transfer(uri, temporary, digest)
+                    : transfer(Path.of(uri), temporary, digest);
+      } catch (IOException exception) {
+        if (remote) release(temporary, partial); // keep received bytes for the next attempt
+        throw exception;
+      }
+      var actual = HexFormat.of().formatHex(digest.digest());
+      if (sha256 != null && !sha256.equalsIgnoreCase(actual)) {
+        throw new IllegalStateException(
+            "Digest mismatch for %s: expected %s but got %s".formatted(uri, sha256, actual));
+      }
+      if (remote) repository.store(source, temporary);
+      PathSupport.moveAtomically(temporary, target);
+      return new Download(target, uri, size, actual);
+    } catch (RuntimeException exception) {
+      throw exception;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Download failed: " + uri, exception);
+    } catch (Exception exception) {
+      throw new RuntimeException("Download failed: " + uri, exception);
+    } finally {
+      if (temporary != null) delete(temporary);
+      permits.release();
+    }
+  }
+
+  /**
+   * Downloads all given files concurrently, blocking until all of them are in place.
+   *
+   * @param downloads the map of target paths to their source locations
+   * @return a list of completed downloads in iteration order of the given map
+   */
+  public List<Download> downloadAll(Map<Path, URI> downloads) {
+    var list = new ArrayList<Download>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var futures = new ArrayList<Future<Download>>();
+      for (var entry : downloads.entrySet()) {
+        futures.add(executor.submit(() -> download(entry.getKey(), entry.getValue())));
+      }
+      for (var future : futures) list.add(future.get());
+    } catch (ExecutionException exception) {
+      if (exception.getCause() instanceof RuntimeException cause) throw cause;
+      throw new RuntimeException(exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while downloading", exception);
+    }
+    return List.copyOf(list);
+  }
+
+  /** Takes over an interrupted transfer, unless another download claimed it first. */
+  private static void claim(Path partial, Path temporary) {
+    try {
+      Files.move(partial, temporary, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exception) {
+      // no interrupted transfer, already claimed, or no atomic renaming: start from scratch
+    }
+  }
+
+  /** Leaves an interrupted transfer behind, unless another download did so already. */
+  private static void release(Path temporary, Path partial) {
+    try {
+      if (Files.size(temporary) > 0) Files.move(temporary, partial);
+    } catch (IOException exception) {
+      // another interrupted transfer was left behind, or the file is gone
+    }
+  }
+
+  private static void delete(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException exception) {
+      // ignore, it's only a temporary file
+    }
+  }
+
+  private long transfer(URI source, Path partial, MessageDigest digest) throws Exception {
+    var offset = Files.exists(partial) ? Files.size(partial) : 0L;
+    var request = HttpRequest.newBuilder(source).GET();
+    if (offset > 0) request.header("Range", "bytes=" + offset + "-");
+    var response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    var status = response.statusCode();
+    var resume = offset > 0 && status == 206;
+    if (!resume && status != 200) {
+      response.body().close();
+      if (status == 416) { // range not satisfiable, start over
+        Files.delete(partial);
+        return transfer(source, partial, digest);
+      }
+      throw new IOException("Unexpected HTTP status %d for %s".formatted(status, source));
+    }
+    if (resume) {
+      try (var stream = Files.newInputStream(partial)) {
+        transfer(stream, OutputStream.nullOutputStream(), digest);
+      }
+    }
+    try (var stream = response.body();
+        var target =
+            resume
+                ? Files.newOutputStream(partial, APPEND)
+                : Files.newOutputStream(partial, CREATE, TRUNCATE_EXISTING, WRITE)) {
+      return (resume ? offset : 0) + transfer(stream, target, digest);
+    }
+  }
+
+  private static long link(Path source, Path partial, MessageDigest digest) throws Exception {
+    Files.deleteIfExists(partial);
+    try {
+      Files.createLink(partial, source);
+    } catch (IOException | UnsupportedOperationException exception) {
+      return transfer(source, partial, digest);
+    }
+    try (var stream = Files.newInputStream(partial)) {
+      return transfer(stream, OutputStream.nullOutputStream(), digest);
+    }
+  }
+
+  private static long transfer(Path source, Path partial, MessageDigest digest) throws Exception {
+    try (var stream = Files.newInputStream(source);
+        var target = Files.newOutputStream(partial, CREATE, TRUNCATE_EXISTING, WRITE)) {
+      return transfer(stream, target, digest);
+    }
+  }
+
+  private static long transfer(InputStream source, OutputStream target, MessageDigest digest)
+      throws IOException {
+    var buffer = new byte[64 * 1024];
+    var total = 0L;
+    int read;
+    while ((read = source.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+      target.write(buffer, 0, read);
+      total += read;
+    }
+    return total;
+  }
+}
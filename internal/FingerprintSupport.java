@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Static utility methods for computing fingerprints of strings, files, and directory trees. */
+public interface FingerprintSupport {
+  /** {@return the hex-encoded SHA-256 digest of the given lines} */
+  static String fingerprint(Stream<String> lines) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      lines.forEachOrdered(
+          line -> {
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+          });
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (Exception exception) {
+      throw new RuntimeException(exception);
+    }
+  }
+
+  /**
+   * {@return one line per regular file found at the given paths, in a stable order}
+   *
+   * <p>Each line is composed of the file's path, relative to the given path it was found at, and
+   * its hex-encoded SHA-256 digest. Digests are looked up in the given cache first and computed
+   * in parallel for files that changed. Non-existent paths are skipped.
+   *
+   * @param cache the cache of file digests to use
+   * @param paths the files and directories to walk
+   */
+  static List<String> digests(DigestCache cache, Collection<Path> paths) {
+    var lines = new ArrayList<String>();
+    for (var path : paths) {
+      if (Files.notExists(path)) continue;
+      List<Path> files;
+      try (var stream = Files.walk(path)) {
+        files = stream.filter(Files::isRegularFile).sorted().toList();
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Walking failed: " + path, exception);
+      }
+      var checksums = cache.sha256(files);
+      for (var file : files) {
+        var name = file.equals(path) ? file.toString() : path.relativize(file).toString();
+        var sha256 = checksums.get(file);
+        lines.add(name.replace('\\', '/') + ' ' + sha256);
+      }
+    }
+    return List.copyOf(lines);
+  }
+}
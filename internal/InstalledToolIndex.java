@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import run.bach.ToolProgram;
+
+/**
+ * An index of installed tools stored in an installation home directory.
+ *
+ * <p>Each entry maps the relative path of an installation folder, suffixed with the string
+ * representation of the record-based installer and its configuration, to the recipe of the tool
+ * program that was installed into it: the install stamp read from the folder's {@code .installed}
+ * marker file, the name of the tool program, and its command. An entry is only trusted if the
+ * stamp still matches the marker file and the program file of the command still exists. Entries
+ * not satisfying these conditions are dropped when the index is written.
+ *
+ * @param file the path to the properties file backing this index
+ * @param entries the in-memory view of all entries
+ */
+public record InstalledToolIndex(Path file, Map<String, String> entries) {
+  public static final String FILE_NAME = "installed.properties";
+
+  private static final Map<Path, InstalledToolIndex> INDICES = new ConcurrentHashMap<>();
+
+  /** {@return the index of the given installation home directory, loaded once per JVM} */
+  public static InstalledToolIndex of(Path home) {
+    var file = home.resolve(FILE_NAME).toAbsolutePath().normalize();
+    return INDICES.computeIfAbsent(file, InstalledToolIndex::load);
+  }
+
+  private static InstalledToolIndex load(Path file) {
+    var entries = new ConcurrentHashMap<String, String>();
+    if (Files.isRegularFile(file)) {
+      var properties = new Properties();
+      try (var reader = Files.newBufferedReader(file)) {
+        properties.load(reader);
+      } catch (IOException exception) {
+        return new InstalledToolIndex(file, entries); // start with an empty index
+      }
+      properties.forEach((key, value) -> entries.put((String) key, (String) value));
+    }
+    return new InstalledToolIndex(file, entries);
+  }
+
+  /**
+   * {@return the tool program recorded for the given installation folder, if still valid}
+   *
+   * @param key the key of the installation folder
+   * @param marker the install marker file of the installation folder
+   */
+  public Optional<ToolProgram> find(String key, Path marker) {
+    var value = entries.get(key);
+    if (value == null) return Optional.empty();
+    if (!valid(value, marker)) {
+      entries.remove(key, value);
+      return Optional.empty();
+    }
+    var elements = value.split("\t");
+    var command = Arrays.asList(elements).subList(2, elements.length);
+    return Optional.of(new ToolProgram(elements[1], command));
+  }
+
+  /** {@return {@code true} if the recorded recipe still matches the installation folder} */
+  private static boolean valid(String value, Path marker) {
+    var elements = value.split("\t");
+    if (elements.length < 3) return false;
+    if (!elements[0].equals(stamp(marker))) return false;
+    var program = elements[2]; // a command name or the path to an executable file
+    if (program.indexOf('/') < 0 && program.indexOf('\\') < 0) return true;
+    return Files.exists(Path.of(program));
+  }
+
+  /** {@return {@code true} if the given key is well-formed and its recipe is still valid} */
+  private boolean valid(String key, String value) {
+    var hash = key.indexOf('#');
+    if (hash <= 0) return false;
+    var folder = key.substring(0, hash); // followed by the installer's configuration
+    return valid(value, file.getParent().resolve(folder).resolve(".installed"));
+  }
+
+  /**
+   * Records the recipe of a tool program installed into a folder.
+   *
+   * @param key the key of the installation folder
+   * @param marker the install marker file of the installation folder
+   * @param program the installed tool program
+   */
+  public void record(String key, Path marker, ToolProgram program) {
+    var stamp = stamp(marker);
+    if (stamp.isEmpty()) return;
+    if (program.command().stream().anyMatch(element -> element.contains("\t"))) return;
+    var value = stamp + '\t' + program.name() + '\t' + String.join("\t", program.command());
+    if (value.equals(entries.put(key, value))) return;
+    synchronized (this) {
+      try {
+        var merged = load(file).entries(); // keep entries written by other processes
+        merged.putAll(entries);
+        merged.entrySet().removeIf(entry -> !valid(entry.getKey(), entry.getValue()));
+        var properties = new Properties();
+        properties.putAll(merged);
+        PathSupport.writeAtomically(file, stream -> properties.store(stream, "Installed tools"));
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Writing index failed: " + file, exception);
+      }
+    }
+  }
+
+  private static String stamp(Path marker) {
+    try {
+      return Files.readString(marker).strip();
+    } catch (IOException exception) {
+      return "";
+    }
+  }
+}
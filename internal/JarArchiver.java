@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.spi.ToolProvider;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An in-process archiver writing modular JAR files with entries being compressed in parallel.
+ *
+ * <p>The archiver understands the subset of the {@code jar} tool's options used to create modular
+ * JAR files: {@code --create}, {@code --file}, {@code --module-version}, {@code --main-class},
+ * {@code --date}, {@code --no-compress}, {@code --release}, and {@code -C <dir> .}. The {@code
+ * module-info.class} entries are extended with the module version, the main class, and the set of
+ * packages of the module. Roots following a {@code --release} option are stored below {@code
+ * META-INF/versions/<release>/} and mark the archive as a multi-release JAR file.
+ *
+ * @param file the JAR file to create or replace
+ * @param version the module version to record, if any
+ * @param mainClass the main class to record, if any
+ * @param date the timestamp of all entries, if any, otherwise the last-modified time of each file
+ * @param level the compression level, {@code 0} stores entries without compressing them
+ * @param roots the list of directories to archive
+ */
+public record JarArchiver(
+    Path file,
+    Optional<String> version,
+    Optional<String> mainClass,
+    Optional<ZonedDateTime> date,
+    int level,
+    List<Root> roots) {
+
+  /**
+   * A directory to archive.
+   *
+   * @param release the Java release targeted by the directory, or {@code 0} for the base release
+   * @param directory the directory to archive
+   */
+  public record Root(int release, Path directory) {}
+
+  /** Signals that an archive needs ZIP64 extensions, which this archiver doesn't write. */
+  public static final class Zip64RequiredException extends IOException {
+    @java.io.Serial private static final long serialVersionUID = 4360126337546329481L;
+
+    public Zip64RequiredException(String message) {
+      super(message);
+    }
+  }
+
+  /** The maximum number of entries of an archive without ZIP64 extensions. */
+  private static final int MAX_ENTRIES = 0xFFFF;
+
+  /** The maximum size and offset of an archive without ZIP64 extensions. */
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+  /**
+   * {@return an archiver for the given arguments of a {@code jar} tool call, if all are supported}
+   *
+   * @param arguments the arguments of a {@code jar --create} tool call
+   * @param level the compression level to use unless {@code --no-compress} is present
+   */
+  public static Optional<JarArchiver> ofJarArguments(List<String> arguments, int level) {
+    Path file = null;
+    String version = null, mainClass = null;
+    ZonedDateTime date = null;
+    var release = 0;
+    var roots = new ArrayList<Root>();
+    var create = false;
+    for (var iterator = arguments.iterator(); iterator.hasNext(); ) {
+      var argument = iterator.next();
+      switch (argument) {
+        case "--create", "-c" -> create = true;
+        case "--file", "-f" -> file = Path.of(iterator.next());
+        case "--module-version" -> version = iterator.next();
+        case "--main-class", "-e" -> mainClass = iterator.next();
+        case "--date" -> date = ZonedDateTime.parse(iterator.next());
+        case "--no-compress", "-0" -> level = 0;
+        case "--release" -> release = Integer.parseInt(iterator.next());
+        case "-C" -> {
+          var directory = Path.of(iterator.next());
+          if (!iterator.hasNext() || !iterator.next().equals(".")) return Optional.empty();
+          roots.add(new Root(release, directory));
+        }
+        default -> {
+          return Optional.empty();
+        }
+      }
+    }
+    if (!create || file == null) return Optional.empty();
+    return Optional.of(
+        new JarArchiver(
+            file,
+            Optional.ofNullable(version),
+            Optional.ofNullable(mainClass),
+            Optional.ofNullable(date),
+            level,
+            List.copyOf(roots)));
+  }
+
+  /**
+   * {@return a tool provider named {@code jar} that creates JAR files using this archiver}
+   *
+   * <p>Calls with arguments not understood by the archiver and archives requiring ZIP64 extensions
+   * are delegated to the {@code jar} tool of the JDK.
+   *
+   * @param level the compression level to use unless {@code --no-compress} is present
+   * @param cache the directory to store digest manifests in for updating existing JAR files, or
+   *     {@code null} to always replace them
+   * @see #update(Path)
+   */
+  public static ToolProvider provider(int level, Path cache) {
+    return new Provider(level, cache);
+  }
+
+  private record Provider(int level, Path cache) implements ToolProvider {
+    @Override
+    public String name() {
+      return "jar";
+    }
+
+    @Override
+    public int run(PrintWriter out, PrintWriter err, String... args) {
+      var archiver = ofJarArguments(List.of(args), level);
+      if (archiver.isPresent()) {
+        try {
+          if (cache != null) archiver.get().update(cache);
+          else archiver.get().write();
+          return 0;
+        } catch (UncheckedIOException exception) {
+          if (!(exception.getCause() instanceof Zip64RequiredException limit)) throw exception;
+          out.println("ZIP64 required, delegating to jar tool: " + limit.getMessage());
+          if (cache != null) PathSupport.deleteRecursively(archiver.get().digestsFile(cache));
+        }
+      }
+      var jar = ToolProvider.findFirst("jar").orElseThrow();
+      return jar.run(out, err, args);
+    }
+  }
+
+  /** A file or directory to put into the archive. */
+  private record Source(String name, Path path) {}
+
+  /** An archive entry with its data being compressed or stored. */
+  private record Entry(String name, int method, long crc, long size, byte[] data, long time) {}
+
+  /** Creates or replaces the JAR file. */
+  public void write() {
+    archive(null);
+  }
+
+  /**
+   * Creates the JAR file or updates it if its content changed since it was last archived.
+   *
+   * <p>The SHA-256 digest of each archived file is stored in a digest manifest in the given cache
+   * directory, together with a fingerprint of the module version, the main class, the date, the
+   * compression level, and the list of roots, and with the size and last-modified time of the
+   * written JAR file. If the fingerprint, all digests, and the size and last-modified time of the
+   * existing JAR file match, the JAR file is left untouched. Otherwise, the compressed data of
+   * unchanged entries is copied from the existing JAR file, if it wasn't changed since it was
+   * written, and only new or changed entries are compressed.
+   *
+   * @param cache the directory to store the digest manifest in, not next to the JAR file
+   * @return {@code true} if the JAR file was written, {@code false} if it was up-to-date
+   */
+  public boolean update(Path cache) {
+    return archive(digestsFile(cache));
+  }
+
+  /** {@return the path of the digest manifest of the JAR file in the given cache directory} */
+  public Path digestsFile(Path cache) {
+    return cache.resolve(file.getFileName() + ".digests");
+  }
+
+  private boolean archive(Path digestsFile) {
+    try {
+      var sources = collectSources();
+      var files =
+          sources.values().stream()
+              .map(Source::path)
+              .filter(path -> path != null && Files.isRegularFile(path));
+      var checksums = PathSupport.checksums(files.toList(), "SHA-256");
+      var digests = new TreeMap<String, String>();
+      for (var source : sources.values()) {
+        var checksum = source.path() == null ? null : checksums.get(source.path());
+        if (checksum != null) digests.put(source.name(), checksum.get("SHA-256"));
+      }
+      var header = header();
+      var previous = digestsFile != null ? readDigests(digestsFile) : Map.<String, String>of();
+      var valid =
+          Files.isRegularFile(file)
+              && header.equals(previous.get(HEADER))
+              && stamp().equals(previous.get(STAMP));
+      if (valid && digests.equals(withoutHeader(previous))) return false;
+      if (sources.size() + 2 > MAX_ENTRIES) { // including META-INF/ and its manifest
+        throw new Zip64RequiredException("Too many entries: " + (sources.size() + 2));
+      }
+      var reusable = valid ? readRawEntries(file) : Map.<String, Entry>of();
+
+      var packages = new TreeSet<String>();
+      sources.keySet().stream().map(JarArchiver::packageName).forEach(packages::add);
+      packages.remove("");
+      var entries = new ArrayList<Entry>();
+      var time = date.map(JarArchiver::dosTime).orElse(dosTime(ZonedDateTime.now()));
+      entries.add(directory("META-INF/", time));
+      entries.add(deflate("META-INF/MANIFEST.MF", manifest(), time));
+      sources.values().stream()
+          .parallel()
+          .map(
+              source -> {
+                var name = source.name();
+                var unchanged = Objects.equals(digests.get(name), previous.get(name));
+                var raw = reusable.get(name);
+                if (unchanged && raw != null && !name.endsWith("module-info.class")) return raw;
+                return toEntry(source, packages);
+              })
+          .forEachOrdered(entries::add);
+      PathSupport.writeAtomically(file, stream -> writeArchive(stream, entries));
+      if (digestsFile != null) writeDigests(digestsFile, header, digests);
+      return true;
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Archiving failed: " + file, exception);
+    }
+  }
+
+  private static final String HEADER = "#", STAMP = "!";
+
+  private String header() {
+    var lines =
+        Stream.concat(
+            Stream.of(
+                "version " + version.orElse(""),
+                "main-class " + mainClass.orElse(""),
+                "date " + date.map(ZonedDateTime::toString).orElse(""),
+                "level " + level),
+            roots.stream().map(root -> "root " + root.release() + ' ' + root.directory()));
+    return FingerprintSupport.fingerprint(lines);
+  }
+
+  private static Map<String, String> readDigests(Path file) throws IOException {
+    if (!Files.isRegularFile(file)) return Map.of();
+    var digests = new TreeMap<String, String>();
+    for (var line : Files.readAllLines(file)) {
+      var separator = line.indexOf(' ');
+      if (separator <= 0) continue;
+      digests.put(line.substring(separator + 1), line.substring(0, separator));
+    }
+    return digests;
+  }
+
+  private static Map<String, String> withoutHeader(Map<String, String> digests) {
+    var map = new TreeMap<>(digests);
+    map.remove(HEADER);
+    map.remove(STAMP);
+    return map;
+  }
+
+  /** {@return the size and last-modified time of the JAR file, or an empty string} */
+  private String stamp() throws IOException {
+    if (!Files.isRegularFile(file)) return "";
+    return Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis();
+  }
+
+  private void writeDigests(Path digestsFile, String header, Map<String, String> digests)
+      throws IOException {
+    var lines = new ArrayList<String>();
+    lines.add(header + ' ' + HEADER);
+    lines.add(stamp() + ' ' + STAMP);
+    digests.forEach((name, sha256) -> lines.add(sha256 + ' ' + name));
+    var separator = System.lineSeparator();
+    var bytes = (String.join(separator, lines) + separator).getBytes(StandardCharsets.UTF_8);
+    PathSupport.writeAtomically(digestsFile, stream -> stream.write(bytes));
+  }
+
+  /** {@return a map of entry names to entries with their raw, possibly compressed data} */
+  private static Map<String, Entry> readRawEntries(Path file) throws IOException {
+    var bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    var end = bytes.limit() - 22;
+    while (end >= 0 && bytes.getInt(end) != 0x06054b50) end--;
+    if (end < 0) return Map.of();
+    var count = Short.toUnsignedInt(bytes.getShort(end + 10));
+    var position = Integer.toUnsignedLong(bytes.getInt(end + 16));
+    var entries = new HashMap<String, Entry>();
+    for (int i = 0; i < count; i++) {
+      var header = (int) position;
+      if (bytes.getInt(header) != 0x02014b50) return Map.of();
+      var method = Short.toUnsignedInt(bytes.getShort(header + 10));
+      var time = Integer.toUnsignedLong(bytes.getInt(header + 12));
+      var crc = Integer.toUnsignedLong(bytes.getInt(header + 16));
+      var compressed = bytes.getInt(header + 20);
+      var size = Integer.toUnsignedLong(bytes.getInt(header + 24));
+      var nameLength = Short.toUnsignedInt(bytes.getShort(header + 28));
+      var extraLength = Short.toUnsignedInt(bytes.getShort(header + 30));
+      var commentLength = Short.toUnsignedInt(bytes.getShort(header + 32));
+      var local = bytes.getInt(header + 42);
+      var name = new byte[nameLength];
+      bytes.get(header + 46, name);
+      var localNameLength = Short.toUnsignedInt(bytes.getShort(local + 26));
+      var localExtraLength = Short.toUnsignedInt(bytes.getShort(local + 28));
+      var data = new byte[compressed];
+      bytes.get(local + 30 + localNameLength + localExtraLength, data);
+      var string = new String(name, StandardCharsets.UTF_8);
+      entries.put(string, new Entry(string, method, crc, size, data, time));
+      position += 46 + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  private Map<String, Source> collectSources() throws IOException {
+    var sources = new LinkedHashMap<String, Source>();
+    for (var root : roots) {
+      if (!Files.isDirectory(root.directory())) continue;
+      var prefix = root.release() == 0 ? "" : "META-INF/versions/" + root.release() + '/';
+      if (!prefix.isEmpty()) {
+        sources.putIfAbsent("META-INF/versions/", new Source("META-INF/versions/", null));
+        sources.putIfAbsent(prefix, new Source(prefix, null));
+      }
+      List<Path> paths;
+      try (var stream = Files.walk(root.directory())) {
+        paths = stream.filter(path -> !path.equals(root.directory())).sorted().toList();
+      }
+      for (var path : paths) {
+        var name = prefix + root.directory().relativize(path).toString().replace('\\', '/');
+        if (name.equals("META-INF") || name.equals("META-INF/MANIFEST.MF")) continue;
+        if (Files.isDirectory(path)) name += '/';
+        sources.putIfAbsent(name, new Source(name, path)); // first root wins
+      }
+    }
+    var ordered = new LinkedHashMap<String, Source>(); // module descriptors first, like jar does
+    for (var source : sources.values()) {
+      if (source.name().endsWith("module-info.class")) ordered.put(source.name(), source);
+    }
+    ordered.putAll(sources);
+    return ordered;
+  }
+
+  private byte[] manifest() throws IOException {
+    var manifest = new Manifest();
+    var attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.put(new Attributes.Name("Created-By"), Runtime.version() + " (run.bach)");
+    mainClass.ifPresent(main -> attributes.put(Attributes.Name.MAIN_CLASS, main));
+    if (roots.stream().anyMatch(root -> root.release() != 0)) {
+      attributes.put(Attributes.Name.MULTI_RELEASE, "true");
+    }
+    var bytes = new ByteArrayOutputStream();
+    manifest.write(bytes);
+    return bytes.toByteArray();
+  }
+
+  private Entry toEntry(Source source, TreeSet<String> packages) {
+    try {
+      var path = source.path();
+      var time = date.map(JarArchiver::dosTime).orElse(dosTime(ZonedDateTime.now()));
+      if (date.isEmpty() && path != null) {
+        var modified = Files.getLastModifiedTime(path).toInstant();
+        time = dosTime(LocalDateTime.ofInstant(modified, ZoneId.systemDefault()));
+      }
+      if (source.name().endsWith("/")) return directory(source.name(), time);
+      var bytes = Files.readAllBytes(path);
+      if (source.name().endsWith("module-info.class")) {
+        bytes = extendModuleInfo(bytes, version, mainClass, packages);
+      }
+      return deflate(source.name(), bytes, time);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private Entry directory(String name, long time) {
+    return new Entry(name, 0, 0, 0, new byte[0], time);
+  }
+
+  private Entry deflate(String name, byte[] bytes, long time) {
+    var crc = new CRC32();
+    crc.update(bytes);
+    if (level == 0) return new Entry(name, 0, crc.getValue(), bytes.length, bytes, time);
+    var deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      var out = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+      var buffer = new byte[64 * 1024];
+      while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+      return new Entry(name, 8, crc.getValue(), bytes.length, out.toByteArray(), time);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeArchive(OutputStream stream, List<Entry> entries) throws IOException {
+    if (entries.size() > MAX_ENTRIES) {
+      throw new Zip64RequiredException("Too many entries: " + entries.size());
+    }
+    var offsets = new long[entries.size()];
+    var offset = 0L;
+    for (int i = 0; i < entries.size(); i++) {
+      var entry = entries.get(i);
+      var name = entry.name().getBytes(StandardCharsets.UTF_8);
+      offsets[i] = offset;
+      var header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(0x04034b50).putShort((short) 20).putShort((short) 0x0800);
+      header.putShort((short) entry.method()).putInt((int) entry.time());
+      header.putInt((int) entry.crc()).putInt(entry.data().length).putInt((int) entry.size());
+      header.putShort((short) name.length).putShort((short) 0).put(name);
+      stream.write(header.array());
+      stream.write(entry.data());
+      offset += header.capacity() + entry.data().length;
+      if (offset > MAX_SIZE) throw new Zip64RequiredException("Archive too large: " + offset);
+    }
+    var directoryOffset = offset;
+    for (int i = 0; i < entries.size(); i++) {
+      var entry = entries.get(i);
+      var name = entry.name().getBytes(StandardCharsets.UTF_8);
+      var header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(0x02014b50).putShort((short) 20).putShort((short) 20);
+      header.putShort((short) 0x0800).putShort((short) entry.method()).putInt((int) entry.time());
+      header.putInt((int) entry.crc()).putInt(entry.data().length).putInt((int) entry.size());
+      header.putShort((short) name.length).putShort((short) 0).putShort((short) 0);
+      header.putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offsets[i]);
+      header.put(name);
+      stream.write(header.array());
+      offset += header.capacity();
+    }
+    if (offset > MAX_SIZE) throw new Zip64RequiredException("Archive too large: " + offset);
+    var end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+    end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0);
+    end.putShort((short) entries.size()).putShort((short) entries.size());
+    end.putInt((int) (offset - directoryOffset)).putInt((int) directoryOffset).putShort((short) 0);
+    stream.write(end.array());
+  }
+
+  private static long dosTime(ZonedDateTime dateTime) {
+    var time = dateTime.withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    return dosTime(time);
+  }
+
+  private static long dosTime(LocalDateTime time) {
+    if (time.getYear() < 1980) return (1 << 21) | (1 << 16);
+    var date = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+    var clock = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    return ((long) date << 16 | clock) & 0xFFFFFFFFL;
+  }
+
+  private static String packageName(String name) {
+    if (name.startsWith("META-INF/") || name.endsWith("/")) return "";
+    var slash = name.lastIndexOf('/');
+    if (slash <= 0) return "";
+    var packageName = name.substring(0, slash).replace('/', '.');
+    for (var segment : packageName.split("\\.")) {
+      if (segment.isEmpty() || !Character.isJavaIdentifierStart(segment.charAt(0))) return "";
+      if (!segment.chars().allMatch(Character::isJavaIdentifierPart)) return "";
+    }
+    return packageName;
+  }
+
+  /**
+   * {@return the bytes of a {@code module-info.class} file extended with the given attributes}
+   *
+   * <p>The module version is stored in the {@code Module} attribute, the main class in the {@code
+   * ModuleMainClass} attribute, and the packages in the {@code ModulePackages} attribute. All
+   * other parts of the class file are copied verbatim.
+   */
+  static byte[] extendModuleInfo(
+      byte[] bytes, Optional<String> version, Optional<String> mainClass, TreeSet<String> packages)
+      throws IOException {
+    var in = new DataInputStream(new ByteArrayInputStream(bytes));
+    var magic = in.readInt();
+    var minor = in.readUnsignedShort();
+    var major = in.readUnsignedShort();
+    var pool = new ConstantPool(in);
+    var access = in.readUnsignedShort();
+    var thisClass = in.readUnsignedShort();
+    var superClass = in.readUnsignedShort();
+    var interfaces = in.readUnsignedShort();
+    var fields = in.readUnsignedShort();
+    var methods = in.readUnsignedShort();
+    if (interfaces + fields + methods != 0) throw new IOException("Not a module-info class file");
+    var attributes = new LinkedHashMap<String, byte[]>();
+    var count = in.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      var name = pool.utf8(in.readUnsignedShort());
+      var info = new byte[in.readInt()];
+      in.readFully(info);
+      attributes.put(name, info);
+    }
+    var module = attributes.get("Module");
+    if (module == null) throw new IOException("Module attribute not found");
+    if (version.isPresent()) {
+      var index = pool.utf8(version.get());
+      module[4] = (byte) (index >> 8);
+      module[5] = (byte) index;
+    }
+    if (mainClass.isPresent()) {
+      var index = pool.reference(7, mainClass.get().replace('.', '/'));
+      attributes.put("ModuleMainClass", new byte[] {(byte) (index >> 8), (byte) index});
+    }
+    var modulePackages = new ByteArrayOutputStream();
+    var data = new DataOutputStream(modulePackages);
+    data.writeShort(packages.size());
+    for (var name : packages) data.writeShort(pool.reference(20, name.replace('.', '/')));
+    attributes.put("ModulePackages", modulePackages.toByteArray());
+
+    var result = new ByteArrayOutputStream(bytes.length + 256);
+    var out = new DataOutputStream(result);
+    var names = new ArrayList<Integer>();
+    for (var name : attributes.keySet()) names.add(pool.utf8(name)); // before writing the pool
+    out.writeInt(magic);
+    out.writeShort(minor);
+    out.writeShort(major);
+    pool.write(out);
+    out.writeShort(access);
+    out.writeShort(thisClass);
+    out.writeShort(superClass);
+    out.writeShort(0); // interfaces
+    out.writeShort(0); // fields
+    out.writeShort(0); // methods
+    out.writeShort(attributes.size());
+    var index = 0;
+    for (var info : attributes.values()) {
+      out.writeShort(names.get(index++));
+      out.writeInt(info.length);
+      out.write(info);
+    }
+    out.flush();
+    return result.toByteArray();
+  }
+
+  /** The constant pool of a class file, supporting lookups and additions of entries. */
+  private static final class ConstantPool {
+    private final List<byte[]> entries = new ArrayList<>(); // index 0 is unused
+    private final Map<String, Integer> utf8s = new LinkedHashMap<>();
+    private final Map<String, Integer> references = new LinkedHashMap<>();
+
+    ConstantPool(DataInputStream in) throws IOException {
+      var count = in.readUnsignedShort();
+      entries.add(null);
+      for (int i = 1; i < count; i++) {
+        var tag = in.readUnsignedByte();
+        var size =
+            switch (tag) {
+              case 1 -> -1;
+              case 7, 8, 16, 19, 20 -> 2;
+              case 15 -> 3;
+              case 3, 4, 9, 10, 11, 12, 17, 18 -> 4;
+              case 5, 6 -> 8;
+              default -> throw new IOException("Unknown constant pool tag: " + tag);
+            };
+        byte[] entry;
+        if (tag == 1) {
+          var string = in.readUTF();
+          var out = new ByteArrayOutputStream();
+          var data = new DataOutputStream(out);
+          data.writeByte(1);
+          data.writeUTF(string);
+          entry = out.toByteArray();
+          utf8s.putIfAbsent(string, i);
+        } else {
+          entry = new byte[1 + size];
+          entry[0] = (byte) tag;
+          in.readFully(entry, 1, size);
+          if (tag == 7 || tag == 20) {
+            var index = (entry[1] & 0xFF) << 8 | entry[2] & 0xFF;
+            references.putIfAbsent(tag + ":" + index, i);
+          }
+        }
+        entries.add(entry);
+        if (tag == 5 || tag == 6) {
+          entries.add(null); // long and double constants take two slots
+          i++;
+        }
+      }
+    }
+
+    String utf8(int index) throws IOException {
+      var entry = entries.get(index);
+      if (entry == null || entry[0] != 1) throw new IOException("Not a UTF-8 constant: " + index);
+      var in = new DataInputStream(new ByteArrayInputStream(entry, 1, entry.length - 1));
+      return in.readUTF();
+    }
+
+    int utf8(String string) throws IOException {
+      var index = utf8s.get(string);
+      if (index != null) return index;
+      var out = new ByteArrayOutputStream();
+      var data = new DataOutputStream(out);
+      data.writeByte(1);
+      data.writeUTF(string);
+      return add(out.toByteArray(), () -> utf8s.put(string, entries.size() - 1));
+    }
+
+    int reference(int tag, String name) throws IOException {
+      var utf8 = utf8(name);
+      var key = tag + ":" + utf8;
+      var index = references.get(key);
+      if (index != null) return index;
+      var entry = new byte[] {(byte) tag, (byte) (utf8 >> 8), (byte) utf8};
+      return add(entry, () -> references.put(key, entries.size() - 1));
+    }
+
+    private int add(byte[] entry, Runnable indexer) throws IOException {
+      if (entries.size() >= 0xFFFF) throw new IOException("Constant pool overflow");
+      entries.add(entry);
+      indexer.run();
+      return entries.size() - 1;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeShort(entries.size());
+      for (var entry : entries) if (entry != null) out.write(entry);
+    }
+  }
+}
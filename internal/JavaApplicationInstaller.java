@@ -5,25 +5,60 @@
 
 package run.bach.internal;
 
+import com.sun.source.tree.ClassTree;
+import com.sun.source.util.JavacTask;
+import java.io.IOException;
+import java.lang.module.ModuleFinder;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.spi.ToolProvider;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
 import run.bach.Tool;
 import run.bach.Tool.Identifier;
+import run.bach.ToolFinder;
 import run.bach.ToolInstaller;
 import run.bach.ToolProgram;
 
-public record JavaApplicationInstaller(Identifier identifier, URI source) implements ToolInstaller {
+/**
+ * An installer of Java applications packaged as a JAR file or as a single {@code .java} file.
+ *
+ * <p>Installed applications are launched in a forked {@code java} process by default. Running
+ * them within the current JVM is opt-in: set the {@code --in-process} system property to {@code
+ * true} or pass {@code true} as the {@code inProcess} component. Only JAR files providing a tool
+ * provider implementation are run in-process, loaded into a dedicated module layer. Applications
+ * that only declare a main class are always forked: neither their calls to {@link
+ * System#exit(int)} nor their writes to the standard streams can be confined to a single run.
+ *
+ * @param identifier the nominal representation of the tool to install
+ * @param source the location of the Java application
+ * @param inProcess whether to run installed applications within the current JVM, defaults to the
+ *     value of the {@code --in-process} system property, which defaults to {@code false}
+ */
+public record JavaApplicationInstaller(Identifier identifier, URI source, boolean inProcess)
+    implements ToolInstaller {
+
+  /** Tool provider instances loaded from JAR files, cached across runs. */
+  private static final Map<Path, Optional<ToolProvider>> LOADED = new ConcurrentHashMap<>();
+
   public JavaApplicationInstaller {
     Objects.requireNonNull(identifier);
     Objects.requireNonNull(source);
   }
 
+  public JavaApplicationInstaller(Identifier identifier, URI source) {
+    this(identifier, source, Boolean.getBoolean("--in-process"));
+  }
+
   @Override
   public String namespace() {
     return identifier.namespace();
@@ -44,11 +79,89 @@ public record JavaApplicationInstaller(Identifier identifier, URI source) implem
     var filename = Path.of(source.getPath()).getFileName().toString();
     var target = into.resolve(filename);
     if (!Files.exists(target)) download(target, source);
-    if (filename.endsWith(".jar")) return ToolProgram.java("-jar", target.toString());
-    if (filename.endsWith(".java")) return ToolProgram.java(target.toString());
+    if (filename.endsWith(".jar")) {
+      var program = ToolProgram.java("-jar", target.toString());
+      if (!inProcess) return program;
+      var key = target.toAbsolutePath().normalize();
+      return LOADED.computeIfAbsent(key, jar -> load(identifier.name(), jar)).orElse(program);
+    }
+    if (filename.endsWith(".java")) {
+      var cache = into.resolve(".cache").resolve(PathSupport.checksum(target, "SHA-256"));
+      var classes = cache.resolve("classes");
+      var marker = cache.resolve("main-class");
+      if (Files.notExists(marker) && !compile(target, classes, marker)) {
+        return ToolProgram.java(target.toString()); // let the source launcher report errors
+      }
+      var main = Files.readString(marker).strip();
+      return ToolProgram.java("--class-path", classes.toString(), main);
+    }
     throw new IllegalArgumentException("Unsupported program type: " + source);
   }
 
+  /**
+   * {@return a tool provider implementation provided by the given JAR file, if any}
+   *
+   * <p>The JAR file is loaded as a module into a dedicated module layer: the provider named like
+   * the tool or the only one provided by the module is picked. An empty optional is returned for
+   * JAR files that don't provide a tool provider implementation or can't be loaded as a module.
+   *
+   * @param name the name of the tool
+   * @param jar the path to the JAR file to load
+   */
+  static Optional<ToolProvider> load(String name, Path jar) {
+    try {
+      var finder = ModuleFinder.of(jar);
+      var roots = finder.findAll().stream().map(module -> module.descriptor().name());
+      var layer = ModulesSupport.buildModuleLayer(finder, roots.toArray(String[]::new));
+      var tools = ToolFinder.of(layer).tools();
+      var named = tools.stream().filter(tool -> tool.identifier().name().equals(name)).findFirst();
+      if (named.isPresent()) return Optional.of(named.get().provider());
+      if (tools.size() == 1) return Optional.of(tools.getFirst().provider());
+      return Optional.empty();
+    } catch (RuntimeException exception) {
+      return Optional.empty(); // not a valid module or not resolvable on its own
+    }
+  }
+
+  /**
+   * Compiles a single-file source-code program into a directory of class files.
+   *
+   * <p>Like the source launcher does, the first top-level type declared in the source file is
+   * treated as the main class. Its name is written to the marker file after all class files were
+   * generated successfully.
+   *
+   * @param source the path to the {@code .java} file to compile
+   * @param classes the directory to store generated class files into
+   * @param marker the file to write the binary name of the main class into
+   * @return {@code true} if compilation succeeded, else {@code false}
+   */
+  static boolean compile(Path source, Path classes, Path marker) throws IOException {
+    var compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) return false;
+    var diagnostics = new DiagnosticCollector<JavaFileObject>();
+    try (var fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+      var units = fileManager.getJavaFileObjects(source);
+      var options = List.of("-d", classes.toString(), "-proc:none");
+      var task = (JavacTask) compiler.getTask(null, fileManager, diagnostics, options, null, units);
+      String main = null;
+      for (var unit : task.parse()) {
+        var packageName = unit.getPackageName();
+        var prefix = packageName == null ? "" : packageName + ".";
+        var types = unit.getTypeDecls().stream().filter(ClassTree.class::isInstance).toList();
+        if (types.isEmpty()) return false;
+        main = prefix + ((ClassTree) types.getFirst()).getSimpleName();
+      }
+      if (main == null) return false;
+      task.generate();
+      var failed =
+          diagnostics.getDiagnostics().stream()
+              .anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR);
+      if (failed) return false;
+      Files.writeString(marker, main);
+      return true;
+    }
+  }
+
   public static Optional<ToolInstaller> find(String string) {
     try {
       var source = new URI(string);
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import run.bach.info.PackageUrl;
+
+/**
+ * A local directory using the Maven 2 repository layout, usually {@code ~/.m2/repository}.
+ *
+ * @param root the root directory of the local repository
+ * @param populate whether to store downloaded files into the local repository
+ */
+public record LocalRepository(Path root, boolean populate) {
+  /**
+   * {@return the local repository configured via system properties}
+   *
+   * <p>The {@code --maven-local-repository} property overrides the default root directory. The
+   * {@code --maven-local-populate} property enables storing downloaded files.
+   */
+  public static LocalRepository ofSystem() {
+    var home = Path.of(System.getProperty("user.home", ""));
+    var root = System.getProperty("--maven-local-repository");
+    var path = root != null ? Path.of(root) : home.resolve(".m2").resolve("repository");
+    return new LocalRepository(path, Boolean.getBoolean("--maven-local-populate"));
+  }
+
+  /**
+   * {@return the path of a file in this repository for the given source location, if mappable}
+   *
+   * <p>Package URLs of type {@code maven} and locations containing a {@code /maven2/} path segment
+   * are mapped onto the repository layout. The returned path may not exist.
+   *
+   * @param source the location to map
+   */
+  public Optional<Path> resolve(URI source) {
+    if ("pkg".equals(source.getScheme())) {
+      if (!source.toString().startsWith("pkg:maven/")) return Optional.empty();
+      var purl = PackageUrl.MavenPurl.parse(source.toString());
+      return Optional.of(root.resolve(purl.coordinate().toPath()));
+    }
+    var path = source.getPath();
+    if (path == null) return Optional.empty();
+    var index = path.indexOf("/maven2/");
+    if (index == -1) return Optional.empty();
+    var relative = path.substring(index + "/maven2/".length());
+    if (relative.isEmpty() || relative.contains("..")) return Optional.empty();
+    return Optional.of(root.resolve(relative));
+  }
+
+  /** {@return the path of an existing file in this repository for the given source location} */
+  public Optional<Path> find(URI source) {
+    return resolve(source).filter(Files::isRegularFile);
+  }
+
+  /**
+   * Copies a downloaded file into this repository, if populating is enabled and it's not present.
+   *
+   * @param source the location the file was downloaded from
+   * @param file the downloaded file
+   */
+  public void store(URI source, Path file) {
+    if (!populate) return;
+    var target = resolve(source);
+    if (target.isEmpty() || Files.exists(target.get())) return;
+    try {
+      PathSupport.writeAtomically(target.get(), stream -> Files.copy(file, stream));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Populating local repository failed: " + target, exception);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A hand-written lexer and parser for the source form of module declarations.
+ *
+ * <p>This parser understands import declarations, annotations, comments, the {@code open}
+ * modifier, and all module directives: {@code requires} with its {@code transitive} and {@code
+ * static} modifiers, {@code exports}, {@code opens}, {@code uses}, and {@code provides}. It needs
+ * no Java compiler and throws an {@link IllegalArgumentException} for any input it does not
+ * understand, for example unicode escapes outside of comments and literals.
+ *
+ * @see ModuleDescriptorSupport#parse(Path)
+ * @see ModuleDescriptorSupport#parseWithJavac(Path)
+ */
+public final class ModuleDeclarationParser {
+  /**
+   * {@return the module descriptor parsed from the given source form of a module declaration}
+   *
+   * @param source the content of a {@code module-info.java} compilation unit
+   * @throws IllegalArgumentException if the source could not be parsed
+   */
+  public static ModuleDescriptor parse(CharSequence source) {
+    return new ModuleDeclarationParser(scan(source.toString())).parseCompilationUnit();
+  }
+
+  /**
+   * Compares this parser with the javac-based one and prints the time each one takes.
+   *
+   * @param args paths to {@code module-info.java} files or directories containing such files
+   */
+  public static void main(String... args) throws Exception {
+    var files = new ArrayList<Path>();
+    for (var arg : args.length == 0 ? new String[] {"."} : args) {
+      try (var stream = Files.walk(Path.of(arg))) {
+        stream.filter(file -> file.endsWith("module-info.java")).forEach(files::add);
+      }
+    }
+    var mismatches = 0;
+    for (var file : files) {
+      var expected = ModuleDescriptorSupport.parseWithJavac(file);
+      var actual = parse(Files.readString(file));
+      if (actual.equals(expected)) continue;
+      System.out.printf("Mismatch in %s%n  javac:  %s%n  parser: %s%n", file, expected, actual);
+      mismatches++;
+    }
+    var rounds = 10;
+    var javac = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      for (var file : files) ModuleDescriptorSupport.parseWithJavac(file);
+    }
+    javac = System.nanoTime() - javac;
+    var parser = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      for (var file : files) parse(Files.readString(file));
+    }
+    parser = System.nanoTime() - parser;
+    var count = files.size() * rounds;
+    System.out.printf("%d module declarations, %d mismatches%n", files.size(), mismatches);
+    System.out.printf("javac  %9.3f ms per declaration%n", javac / 1e6 / Math.max(1, count));
+    System.out.printf("parser %9.3f ms per declaration%n", parser / 1e6 / Math.max(1, count));
+  }
+
+  private final List<String> tokens;
+  private int index;
+
+  private ModuleDeclarationParser(List<String> tokens) {
+    this.tokens = tokens;
+  }
+
+  private ModuleDescriptor parseCompilationUnit() {
+    var imports = new HashMap<String, String>();
+    while (at("import")) {
+      next();
+      if (at("static")) next();
+      var name = parseName();
+      if (!name.endsWith(".*")) imports.put(name.substring(name.lastIndexOf('.') + 1), name);
+      expect(";");
+    }
+    while (at("@")) {
+      next();
+      parseName();
+      if (at("(")) skipParenthesized();
+    }
+    var modifiers = EnumSet.noneOf(ModuleDescriptor.Modifier.class);
+    if (at("open")) {
+      next();
+      modifiers.add(ModuleDescriptor.Modifier.OPEN);
+    }
+    expect("module");
+    var builder = ModuleDescriptor.newModule(parseName(), modifiers);
+    expect("{");
+    while (!at("}")) parseDirective(builder, imports);
+    next();
+    if (index < tokens.size()) throw error("Unexpected token after module declaration");
+    return builder.build();
+  }
+
+  private void parseDirective(ModuleDescriptor.Builder builder, Map<String, String> imports) {
+    var directive = next();
+    switch (directive) {
+      case "requires" -> {
+        var modifiers = EnumSet.noneOf(ModuleDescriptor.Requires.Modifier.class);
+        while ((at("transitive") || at("static")) && !peek(";") && !peek(".")) {
+          modifiers.add(
+              next().equals("static")
+                  ? ModuleDescriptor.Requires.Modifier.STATIC
+                  : ModuleDescriptor.Requires.Modifier.TRANSITIVE);
+        }
+        builder.requires(modifiers, parseName());
+        expect(";");
+      }
+      case "exports", "opens" -> {
+        var source = parseName();
+        var targets = new TreeSet<String>();
+        if (at("to")) {
+          next();
+          do targets.add(parseName());
+          while (accept(","));
+        }
+        expect(";");
+        var exports = directive.equals("exports");
+        if (targets.isEmpty()) {
+          if (exports) builder.exports(source);
+          else builder.opens(source);
+        } else {
+          if (exports) builder.exports(source, targets);
+          else builder.opens(source, targets);
+        }
+      }
+      case "uses" -> {
+        var service = ModuleDescriptorSupport.qualify(parseName(), imports);
+        expect(";");
+        service.ifPresent(builder::uses);
+      }
+      case "provides" -> {
+        var service = ModuleDescriptorSupport.qualify(parseName(), imports);
+        expect("with");
+        var providers = new ArrayList<String>();
+        do ModuleDescriptorSupport.qualify(parseName(), imports).ifPresent(providers::add);
+        while (accept(","));
+        expect(";");
+        if (service.isPresent() && !providers.isEmpty()) builder.provides(service.get(), providers);
+      }
+      default -> throw error("Unknown directive: " + directive);
+    }
+  }
+
+  private String parseName() {
+    var name = new StringBuilder(identifier());
+    while (at(".")) {
+      next();
+      if (at("*")) {
+        next();
+        return name.append(".*").toString();
+      }
+      name.append('.').append(identifier());
+    }
+    return name.toString();
+  }
+
+  private String identifier() {
+    var token = next();
+    if (!Character.isJavaIdentifierStart(token.charAt(0))) throw error("Not a name: " + token);
+    return token;
+  }
+
+  private void skipParenthesized() {
+    var depth = 0;
+    do {
+      var token = next();
+      if (token.equals("(")) depth++;
+      if (token.equals(")")) depth--;
+    } while (depth > 0);
+  }
+
+  private boolean at(String expected) {
+    return index < tokens.size() && tokens.get(index).equals(expected);
+  }
+
+  private boolean peek(String expected) {
+    return index + 1 < tokens.size() && tokens.get(index + 1).equals(expected);
+  }
+
+  private boolean accept(String expected) {
+    if (!at(expected)) return false;
+    index++;
+    return true;
+  }
+
+  private void expect(String expected) {
+    if (!accept(expected)) throw error("Expected '" + expected + "'");
+  }
+
+  private String next() {
+    if (index >= tokens.size()) throw error("Unexpected end of module declaration");
+    return tokens.get(index++);
+  }
+
+  private IllegalArgumentException error(String message) {
+    var found = index < tokens.size() ? tokens.get(index) : "<EOF>";
+    return new IllegalArgumentException(message + " at token #" + index + ": " + found);
+  }
+
+  /** {@return a list of tokens, with comments and the content of literals being dropped} */
+  static List<String> scan(String source) {
+    var tokens = new ArrayList<String>();
+    var length = source.length();
+    var i = 0;
+    while (i < length) {
+      var c = source.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+        while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') i++;
+      } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+        var end = source.indexOf("*/", i + 2);
+        if (end < 0) throw new IllegalArgumentException("Unterminated comment");
+        i = end + 2;
+      } else if (c == '"' || c == '\'') {
+        i = skipLiteral(source, i);
+        tokens.add(String.valueOf(c));
+      } else if (Character.isJavaIdentifierPart(c)) {
+        var begin = i;
+        while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) i++;
+        tokens.add(source.substring(begin, i));
+      } else if (c == '\\') {
+        throw new IllegalArgumentException("Unicode escapes are not supported");
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return List.copyOf(tokens);
+  }
+
+  private static int skipLiteral(String source, int begin) {
+    var quote = source.charAt(begin);
+    if (quote == '"' && source.startsWith("\"\"\"", begin)) {
+      var end = begin + 3;
+      while (true) {
+        end = source.indexOf("\"\"\"", end);
+        if (end < 0) throw new IllegalArgumentException("Unterminated text block");
+        if (source.charAt(end - 1) != '\\') return end + 3;
+        end++;
+      }
+    }
+    for (int i = begin + 1; i < source.length(); i++) {
+      var c = source.charAt(i);
+      if (c == '\\') i++;
+      else if (c == quote) return i + 1;
+      else if (c == '\n' || c == '\r') break;
+    }
+    throw new IllegalArgumentException("Unterminated literal");
+  }
+}
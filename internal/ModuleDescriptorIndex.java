@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index of module descriptors read from modular JAR files.
+ *
+ * <p>Each entry is keyed by the absolute path of a JAR file and is only used while the size and
+ * last-modified time of the file match the recorded values. Module finders created by this index
+ * serve descriptors without opening JAR files; a JAR file is only opened when the content of its
+ * module is read.
+ *
+ * @param file the path to the index file
+ * @param entries the map of absolute JAR file paths to their entries
+ */
+public record ModuleDescriptorIndex(Path file, Map<Path, Entry> entries) {
+  public static final String FILE_NAME = "module-descriptors.index";
+
+  private static final int MAGIC = 0xBAC4D1D1, VERSION = 1;
+
+  private static final Map<Path, ModuleDescriptorIndex> INDICES = new ConcurrentHashMap<>();
+
+  /**
+   * An indexed module descriptor.
+   *
+   * @param size the size of the JAR file in bytes
+   * @param modified the last-modified time of the JAR file in milliseconds
+   * @param descriptor the module descriptor of the JAR file
+   */
+  public record Entry(long size, long modified, ModuleDescriptor descriptor) {}
+
+  /** {@return the index stored in the {@code .bach/out} directory of the working directory} */
+  public static ModuleDescriptorIndex ofSystem() {
+    return of(Path.of(".bach", "out"));
+  }
+
+  /** {@return the index stored in the given directory, loaded once per JVM} */
+  public static ModuleDescriptorIndex of(Path directory) {
+    var file = directory.resolve(FILE_NAME).toAbsolutePath().normalize();
+    return INDICES.computeIfAbsent(file, ModuleDescriptorIndex::load);
+  }
+
+  private static ModuleDescriptorIndex load(Path file) {
+    var entries = new ConcurrentHashMap<Path, Entry>();
+    if (Files.isRegularFile(file)) {
+      try (var data = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+        if (data.readInt() == MAGIC && data.readInt() == VERSION) {
+          var count = data.readInt();
+          for (int i = 0; i < count; i++) {
+            var path = Path.of(data.readUTF());
+            var size = data.readLong();
+            var modified = data.readLong();
+            var descriptor = readDescriptor(data);
+            entries.put(path, new Entry(size, modified, descriptor));
+          }
+        }
+      } catch (IOException | RuntimeException exception) {
+        entries.clear(); // start over with an empty index
+      }
+    }
+    return new ModuleDescriptorIndex(file, entries);
+  }
+
+  /**
+   * {@return a module finder locating modules in the given sequence of paths}
+   *
+   * <p>Like {@link ModuleFinder#of(Path...)}, each path is either a JAR file or a directory
+   * containing JAR files. Directories that contain other entries, like exploded modules or JMOD
+   * files, are delegated to {@link ModuleFinder#of(Path...)}.
+   *
+   * @param entries the paths to JAR files or directories containing JAR files
+   */
+  public ModuleFinder finder(Path... entries) {
+    var finders = new ArrayList<ModuleFinder>();
+    var dirty = false;
+    for (var entry : entries) {
+      if (Files.notExists(entry)) continue;
+      List<Path> jars;
+      if (Files.isDirectory(entry)) {
+        var all = PathSupport.list(entry, path -> true);
+        if (all.stream().anyMatch(path -> Files.isDirectory(path) || isModuleFile(path))) {
+          finders.add(ModuleFinder.of(entry));
+          continue;
+        }
+        jars = all.stream().filter(PathSupport::isJarFile).toList();
+      } else {
+        jars = List.of(entry);
+      }
+      var references = new LinkedHashMap<String, ModuleReference>();
+      for (var jar : jars) {
+        var key = jar.toAbsolutePath().normalize();
+        var known = this.entries.get(key);
+        var size = size(jar);
+        var modified = modified(jar);
+        ModuleDescriptor descriptor;
+        if (known != null && known.size() == size && known.modified() == modified) {
+          descriptor = known.descriptor();
+        } else {
+          var found = ModuleFinder.of(jar).findAll();
+          if (found.size() != 1) throw new FindException("Not a single module: " + jar);
+          descriptor = found.iterator().next().descriptor();
+          this.entries.put(key, new Entry(size, modified, descriptor));
+          dirty = true;
+        }
+        var name = descriptor.name();
+        if (references.containsKey(name)) {
+          throw new FindException("Two versions of module %s found in %s".formatted(name, entry));
+        }
+        references.put(name, new IndexedModuleReference(descriptor, jar));
+      }
+      finders.add(new IndexedModuleFinder(Map.copyOf(references)));
+    }
+    if (dirty) write();
+    return ModuleFinder.compose(finders.toArray(ModuleFinder[]::new));
+  }
+
+  public synchronized void write() {
+    var bytes = new ByteArrayOutputStream();
+    try (var data = new DataOutputStream(bytes)) {
+      data.writeInt(MAGIC);
+      data.writeInt(VERSION);
+      var snapshot = Map.copyOf(entries);
+      data.writeInt(snapshot.size());
+      for (var entry : snapshot.entrySet()) {
+        data.writeUTF(entry.getKey().toString());
+        data.writeLong(entry.getValue().size());
+        data.writeLong(entry.getValue().modified());
+        writeDescriptor(data, entry.getValue().descriptor());
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+    try {
+      PathSupport.writeAtomically(file, bytes::writeTo);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing index failed: " + file, exception);
+    }
+  }
+
+  /** A module finder serving a fixed map of module references. */
+  record IndexedModuleFinder(Map<String, ModuleReference> references) implements ModuleFinder {
+    @Override
+    public Optional<ModuleReference> find(String name) {
+      return Optional.ofNullable(references.get(name));
+    }
+
+    @Override
+    public Set<ModuleReference> findAll() {
+      return Set.copyOf(references.values());
+    }
+  }
+
+  /** A module reference opening its JAR file only when the module's content is read. */
+  static final class IndexedModuleReference extends ModuleReference {
+    private final Path jar;
+
+    IndexedModuleReference(ModuleDescriptor descriptor, Path jar) {
+      super(descriptor, jar.toUri());
+      this.jar = jar;
+    }
+
+    @Override
+    public ModuleReader open() throws IOException {
+      var name = descriptor().name();
+      var reference = ModuleFinder.of(jar).find(name);
+      if (reference.isEmpty()) throw new IOException("Module %s not in %s".formatted(name, jar));
+      return reference.get().open();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return this == object || object instanceof IndexedModuleReference ref && jar.equals(ref.jar);
+    }
+
+    @Override
+    public int hashCode() {
+      return jar.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "[jar=" + jar + ']';
+    }
+  }
+
+  private static boolean isModuleFile(Path path) {
+    return path.toString().endsWith(".jmod");
+  }
+
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private static long modified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  static void writeDescriptor(DataOutputStream data, ModuleDescriptor descriptor)
+      throws IOException {
+    data.writeUTF(descriptor.name());
+    writeModifiers(data, descriptor.modifiers());
+    writeOptional(data, descriptor.rawVersion());
+    data.writeInt(descriptor.requires().size());
+    for (var requires : descriptor.requires()) {
+      writeModifiers(data, requires.modifiers());
+      data.writeUTF(requires.name());
+      writeOptional(data, requires.rawCompiledVersion());
+    }
+    data.writeInt(descriptor.exports().size());
+    for (var exports : descriptor.exports()) {
+      writeModifiers(data, exports.modifiers());
+      data.writeUTF(exports.source());
+      writeStrings(data, exports.targets());
+    }
+    data.writeInt(descriptor.opens().size());
+    for (var opens : descriptor.opens()) {
+      writeModifiers(data, opens.modifiers());
+      data.writeUTF(opens.source());
+      writeStrings(data, opens.targets());
+    }
+    writeStrings(data, descriptor.uses());
+    data.writeInt(descriptor.provides().size());
+    for (var provides : descriptor.provides()) {
+      data.writeUTF(provides.service());
+      writeStrings(data, provides.providers());
+    }
+    writeStrings(data, descriptor.packages());
+    writeOptional(data, descriptor.mainClass());
+  }
+
+  static ModuleDescriptor readDescriptor(DataInputStream data) throws IOException {
+    var name = data.readUTF();
+    var modifiers = readModifiers(data, ModuleDescriptor.Modifier.class);
+    var builder = ModuleDescriptor.newModule(name, modifiers);
+    var automatic = modifiers.contains(ModuleDescriptor.Modifier.AUTOMATIC);
+    readVersion(data).ifPresent(builder::version);
+    var requiresCount = data.readInt();
+    for (int i = 0; i < requiresCount; i++) {
+      var requiresModifiers = readModifiers(data, ModuleDescriptor.Requires.Modifier.class);
+      var requiresName = data.readUTF();
+      var compiledVersion = readVersion(data);
+      if (automatic) continue; // automatic modules only require java.base implicitly
+      if (compiledVersion.isPresent()) {
+        builder.requires(requiresModifiers, requiresName, compiledVersion.get());
+      } else {
+        builder.requires(requiresModifiers, requiresName);
+      }
+    }
+    var exportsCount = data.readInt();
+    for (int i = 0; i < exportsCount; i++) {
+      var exportsModifiers = readModifiers(data, ModuleDescriptor.Exports.Modifier.class);
+      var source = data.readUTF();
+      var targets = Set.copyOf(readStrings(data));
+      if (targets.isEmpty()) builder.exports(exportsModifiers, source);
+      else builder.exports(exportsModifiers, source, targets);
+    }
+    var opensCount = data.readInt();
+    for (int i = 0; i < opensCount; i++) {
+      var opensModifiers = readModifiers(data, ModuleDescriptor.Opens.Modifier.class);
+      var source = data.readUTF();
+      var targets = Set.copyOf(readStrings(data));
+      if (targets.isEmpty()) builder.opens(opensModifiers, source);
+      else builder.opens(opensModifiers, source, targets);
+    }
+    readStrings(data).forEach(builder::uses);
+    var providesCount = data.readInt();
+    for (int i = 0; i < providesCount; i++) {
+      var service = data.readUTF();
+      builder.provides(service, readStrings(data));
+    }
+    builder.packages(Set.copyOf(readStrings(data)));
+    readOptional(data).ifPresent(builder::mainClass);
+    return builder.build();
+  }
+
+  /**
+   * {@return the version read from the given stream, or empty if none was recorded or the recorded
+   * raw version string can't be parsed}
+   */
+  private static Optional<ModuleDescriptor.Version> readVersion(DataInputStream data)
+      throws IOException {
+    var raw = readOptional(data);
+    try {
+      return raw.map(ModuleDescriptor.Version::parse);
+    } catch (IllegalArgumentException exception) {
+      return Optional.empty(); // keep the descriptor, drop its unparsable version
+    }
+  }
+
+  private static void writeModifiers(DataOutputStream data, Set<? extends Enum<?>> modifiers)
+      throws IOException {
+    var bits = 0;
+    for (var modifier : modifiers) bits |= 1 << modifier.ordinal();
+    data.writeInt(bits);
+  }
+
+  private static <E extends Enum<E>> Set<E> readModifiers(DataInputStream data, Class<E> type)
+      throws IOException {
+    var bits = data.readInt();
+    var modifiers = EnumSet.noneOf(type);
+    for (var constant : type.getEnumConstants()) {
+      if ((bits & (1 << constant.ordinal())) != 0) modifiers.add(constant);
+    }
+    return modifiers;
+  }
+
+  private static void writeOptional(DataOutputStream data, Optional<String> optional)
+      throws IOException {
+    data.writeBoolean(optional.isPresent());
+    if (optional.isPresent()) data.writeUTF(optional.get());
+  }
+
+  private static Optional<String> readOptional(DataInputStream data) throws IOException {
+    return data.readBoolean() ? Optional.of(data.readUTF()) : Optional.empty();
+  }
+
+  private static void writeStrings(DataOutputStream data, Collection<String> strings)
+      throws IOException {
+    data.writeInt(strings.size());
+    for (var string : strings) data.writeUTF(string);
+  }
+
+  private static List<String> readStrings(DataInputStream data) throws IOException {
+    var size = data.readInt();
+    var strings = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) strings.add(data.readUTF());
+    return strings;
+  }
+}
@@ -5,11 +5,17 @@
 
 package run.bach.internal;
 
+import com.sun.source.tree.ExportsTree;
+import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.ModuleTree;
+import com.sun.source.tree.OpensTree;
+import com.sun.source.tree.ProvidesTree;
 import com.sun.source.tree.RequiresTree;
+import com.sun.source.tree.UsesTree;
 import com.sun.source.util.JavacTask;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleFinder;
@@ -18,11 +24,15 @@ import java.lang.module.ModuleReference;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.tools.SimpleJavaFileObject;
 
@@ -32,17 +42,33 @@ public interface ModuleDescriptorSupport {
   /**
    * Reads the source form of a module declaration from a file as a module descriptor.
    *
+   * <p>The declaration is parsed by {@link ModuleDeclarationParser}. The javac-based parser is used
+   * as a fallback for declarations the hand-written parser does not understand.
+   *
    * @param info the path to a {@code module-info.java} file to parse
    * @return the module descriptor
-   * @implNote For the time being, only the {@code kind}, the {@code name} and its {@code requires}
-   *     directives are parsed.
+   * @implNote Type names in {@code uses} and {@code provides} directives that can't be qualified
+   *     via single-type import declarations are ignored.
    */
   static ModuleDescriptor parse(Path info) {
-    if (!Path.of("module-info.java").equals(info.getFileName()))
-      throw new IllegalArgumentException("Path must end with 'module-info.java': " + info);
-    if (Files.notExists(info))
-      throw new IllegalArgumentException("Module not found: " + info.toAbsolutePath().toUri());
+    checkModuleInfoFile(info);
+    try {
+      return ModuleDeclarationParser.parse(Files.readString(info));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Reading failed for " + info, exception);
+    } catch (RuntimeException exception) {
+      return parseWithJavac(info);
+    }
+  }
 
+  /**
+   * Reads the source form of a module declaration from a file using javac's parser.
+   *
+   * @param info the path to a {@code module-info.java} file to parse
+   * @return the module descriptor
+   */
+  static ModuleDescriptor parseWithJavac(Path info) {
+    checkModuleInfoFile(info);
     var compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
     var writer = new PrintWriter(Writer.nullWriter());
     var fileManager = compiler.getStandardFileManager(null, null, null);
@@ -53,7 +79,12 @@ public interface ModuleDescriptorSupport {
       for (var tree : javacTask.parse()) {
         var module = tree.getModule();
         if (module == null) throw new AssertionError("No module tree?! -> " + info);
-        return parse(module);
+        var imports = new HashMap<String, String>();
+        for (var importTree : tree.getImports()) {
+          var name = importTree.getQualifiedIdentifier().toString();
+          if (!name.endsWith(".*")) imports.put(name.substring(name.lastIndexOf('.') + 1), name);
+        }
+        return parse(module, imports);
       }
     } catch (Exception e) {
       throw new RuntimeException("Parse failed for " + info, e);
@@ -61,7 +92,14 @@ public interface ModuleDescriptorSupport {
     throw new IllegalArgumentException("Module tree not found in " + info);
   }
 
-  private static ModuleDescriptor parse(ModuleTree moduleTree) {
+  private static void checkModuleInfoFile(Path info) {
+    if (!Path.of("module-info.java").equals(info.getFileName()))
+      throw new IllegalArgumentException("Path must end with 'module-info.java': " + info);
+    if (Files.notExists(info))
+      throw new IllegalArgumentException("Module not found: " + info.toAbsolutePath().toUri());
+  }
+
+  private static ModuleDescriptor parse(ModuleTree moduleTree, Map<String, String> imports) {
     var moduleName = moduleTree.getName().toString();
     var moduleModifiers =
         moduleTree.getModuleType().equals(ModuleTree.ModuleKind.OPEN)
@@ -69,14 +107,63 @@ public interface ModuleDescriptorSupport {
             : EnumSet.noneOf(ModuleDescriptor.Modifier.class);
     var moduleBuilder = ModuleDescriptor.newModule(moduleName, moduleModifiers);
     for (var directive : moduleTree.getDirectives()) {
-      if (directive instanceof RequiresTree requires) {
-        var requiresModuleName = requires.getModuleName().toString();
-        moduleBuilder.requires(requiresModuleName);
+      switch (directive) {
+        case RequiresTree requires -> {
+          var modifiers = EnumSet.noneOf(ModuleDescriptor.Requires.Modifier.class);
+          if (requires.isStatic()) modifiers.add(ModuleDescriptor.Requires.Modifier.STATIC);
+          if (requires.isTransitive()) modifiers.add(ModuleDescriptor.Requires.Modifier.TRANSITIVE);
+          moduleBuilder.requires(modifiers, requires.getModuleName().toString());
+        }
+        case ExportsTree exports -> {
+          var source = exports.getPackageName().toString();
+          var targets = names(exports.getModuleNames());
+          if (targets.isEmpty()) moduleBuilder.exports(source);
+          else moduleBuilder.exports(source, targets);
+        }
+        case OpensTree opens -> {
+          var source = opens.getPackageName().toString();
+          var targets = names(opens.getModuleNames());
+          if (targets.isEmpty()) moduleBuilder.opens(source);
+          else moduleBuilder.opens(source, targets);
+        }
+        case UsesTree uses -> {
+          var service = qualify(uses.getServiceName().toString(), imports);
+          service.ifPresent(moduleBuilder::uses);
+        }
+        case ProvidesTree provides -> {
+          var service = qualify(provides.getServiceName().toString(), imports);
+          var providers = new ArrayList<String>();
+          for (var name : provides.getImplementationNames()) {
+            qualify(name.toString(), imports).ifPresent(providers::add);
+          }
+          if (service.isPresent() && !providers.isEmpty())
+            moduleBuilder.provides(service.get(), providers);
+        }
+        default -> throw new IllegalArgumentException("Unsupported directive: " + directive);
       }
     }
     return moduleBuilder.build();
   }
 
+  private static Set<String> names(List<? extends ExpressionTree> trees) {
+    if (trees == null) return Set.of();
+    return trees.stream().map(Object::toString).collect(Collectors.toSet());
+  }
+
+  /**
+   * {@return the qualified form of a type name written in a module declaration, if known}
+   *
+   * @param name the name of a type as written in the source form of a module declaration
+   * @param imports the map of simple names to qualified names of single-type import declarations
+   */
+  static Optional<String> qualify(String name, Map<String, String> imports) {
+    var dot = name.indexOf('.');
+    var first = dot < 0 ? name : name.substring(0, dot);
+    var imported = imports.get(first);
+    if (imported != null) return Optional.of(dot < 0 ? imported : imported + name.substring(dot));
+    return dot < 0 ? Optional.empty() : Optional.of(name);
+  }
+
   class ModuleInfoFileObject extends SimpleJavaFileObject {
     ModuleInfoFileObject(Path path) {
       super(path.toUri(), Kind.SOURCE);
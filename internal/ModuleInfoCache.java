@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A persistent cache of module descriptors parsed from {@code module-info.java} files.
+ *
+ * <p>Each entry is keyed by the absolute path of a module declaration file and records the SHA-256
+ * digest of the file's content. A cached descriptor is used without reading the file while its
+ * size and last-modified time match the recorded values, and after rehashing the file if only its
+ * last-modified time changed.
+ *
+ * <p>New and updated entries are kept in memory and written to the cache file by {@link #flush()},
+ * which is called at the end of a build and when the JVM shuts down.
+ *
+ * @param file the path to the cache file
+ * @param entries the map of absolute module declaration file paths to their entries
+ * @param dirty the flag indicating entries not yet written to the cache file
+ */
+public record ModuleInfoCache(Path file, Map<Path, Entry> entries, AtomicBoolean dirty) {
+  public static final String FILE_NAME = "module-info.cache";
+
+  private static final int MAGIC = 0xBAC4CAC4, VERSION = 1;
+
+  private static final Map<Path, ModuleInfoCache> CACHES = new ConcurrentHashMap<>();
+
+  /**
+   * A cached module descriptor.
+   *
+   * @param size the size of the module declaration file in bytes
+   * @param modified the last-modified time of the module declaration file in milliseconds
+   * @param sha256 the hex-encoded SHA-256 digest of the module declaration file
+   * @param descriptor the module descriptor parsed from the module declaration file
+   */
+  public record Entry(long size, long modified, String sha256, ModuleDescriptor descriptor) {}
+
+  /**
+   * {@return the cache stored in the {@code .bach/out} directory of the current working directory}
+   *
+   * <p>Module declarations are parsed while a project structure is configured, before a workflow
+   * and its folders exist: the project is assumed to be rooted at the current working directory.
+   */
+  public static ModuleInfoCache ofSystem() {
+    return of(Path.of(".bach", "out"));
+  }
+
+  /** {@return the cache stored in the given directory, loaded once per JVM} */
+  public static ModuleInfoCache of(Path directory) {
+    var file = directory.resolve(FILE_NAME).toAbsolutePath().normalize();
+    return CACHES.computeIfAbsent(file, ModuleInfoCache::load);
+  }
+
+  /** Writes all caches loaded in this JVM that have unwritten entries. */
+  public static void flushAll() {
+    CACHES.values().forEach(ModuleInfoCache::flush);
+  }
+
+  private static ModuleInfoCache load(Path file) {
+    var entries = new ConcurrentHashMap<Path, Entry>();
+    if (Files.isRegularFile(file)) {
+      try (var data = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+        if (data.readInt() == MAGIC && data.readInt() == VERSION) {
+          var count = data.readInt();
+          for (int i = 0; i < count; i++) {
+            var path = Path.of(data.readUTF());
+            var size = data.readLong();
+            var modified = data.readLong();
+            var sha256 = data.readUTF();
+            var descriptor = ModuleDescriptorIndex.readDescriptor(data);
+            entries.put(path, new Entry(size, modified, sha256, descriptor));
+          }
+        }
+      } catch (IOException | RuntimeException exception) {
+        entries.clear(); // start over with an empty cache
+      }
+    }
+    var cache = new ModuleInfoCache(file, entries, new AtomicBoolean());
+    Runtime.getRuntime().addShutdownHook(new Thread(cache::flush, "module-info-cache-flush"));
+    return cache;
+  }
+
+  /**
+   * {@return the module descriptor of the given module declaration file}
+   *
+   * @param info the path to a {@code module-info.java} file
+   * @see ModuleDescriptorSupport#parse(Path)
+   */
+  public ModuleDescriptor parse(Path info) {
+    var key = info.toAbsolutePath().normalize();
+    var known = entries.get(key);
+    try {
+      var size = Files.size(info);
+      var modified = Files.getLastModifiedTime(info).toMillis();
+      if (known != null && known.size() == size && known.modified() == modified) {
+        return known.descriptor();
+      }
+      var sha256 = sha256(Files.readAllBytes(info));
+      var descriptor =
+          known != null && known.sha256().equals(sha256)
+              ? known.descriptor()
+              : ModuleDescriptorSupport.parse(info);
+      entries.put(key, new Entry(size, modified, sha256, descriptor));
+      dirty.set(true);
+      return descriptor;
+    } catch (IOException exception) {
+      return ModuleDescriptorSupport.parse(info);
+    }
+  }
+
+  /** Writes the cache file if entries were added or updated since it was last written. */
+  public void flush() {
+    if (!dirty.getAndSet(false)) return;
+    try {
+      write();
+    } catch (UncheckedIOException exception) {
+      dirty.set(true); // try again on next flush
+    }
+  }
+
+  public synchronized void write() {
+    var bytes = new ByteArrayOutputStream();
+    try (var data = new DataOutputStream(bytes)) {
+      data.writeInt(MAGIC);
+      data.writeInt(VERSION);
+      var snapshot = Map.copyOf(entries);
+      data.writeInt(snapshot.size());
+      for (var entry : snapshot.entrySet()) {
+        data.writeUTF(entry.getKey().toString());
+        data.writeLong(entry.getValue().size());
+        data.writeLong(entry.getValue().modified());
+        data.writeUTF(entry.getValue().sha256());
+        ModuleDescriptorIndex.writeDescriptor(data, entry.getValue().descriptor());
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+    try {
+      PathSupport.writeAtomically(file, bytes::writeTo);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing cache failed: " + file, exception);
+    }
+  }
+
+  private static String sha256(byte[] bytes) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (Exception exception) {
+      throw new RuntimeException(exception);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * A lock file recording the source and digest of each module resolved into a directory.
+ *
+ * <p>Each line is composed of the module name, its source location, its size in bytes, its
+ * SHA-256 digest, and the last-modified time in milliseconds the file had when it was last
+ * verified, separated by a single space.
+ *
+ * @param file the path to the lock file
+ * @param entries the map of module names to their entries
+ */
+public record ModuleLock(Path file, Map<String, Entry> entries) {
+  public static final String FILE_NAME = "modules.lock";
+
+  /**
+   * A locked module.
+   *
+   * @param module the name of the module
+   * @param source the location the module was resolved from
+   * @param size the size of the module file in bytes
+   * @param sha256 the hex-encoded SHA-256 digest of the module file
+   * @param verified the last-modified time of the module file when it was last verified
+   */
+  public record Entry(String module, URI source, long size, String sha256, long verified) {
+    String toLine() {
+      return String.join(" ", module, source.toString(), "" + size, sha256, "" + verified);
+    }
+
+    static Entry ofLine(String line) {
+      var elements = line.split(" ");
+      var source = URI.create(elements[1]);
+      var size = Long.parseLong(elements[2]);
+      return new Entry(elements[0], source, size, elements[3], Long.parseLong(elements[4]));
+    }
+  }
+
+  /** {@return the lock of the given directory, possibly empty} */
+  public static ModuleLock read(Path directory) {
+    var file = directory.resolve(FILE_NAME);
+    var entries = new TreeMap<String, Entry>();
+    if (Files.isRegularFile(file)) {
+      try {
+        for (var line : Files.readAllLines(file)) {
+          if (line.isBlank() || line.startsWith("#")) continue;
+          var entry = Entry.ofLine(line.strip());
+          entries.put(entry.module(), entry);
+        }
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Reading lock file failed: " + file, exception);
+      }
+    }
+    return new ModuleLock(file, entries);
+  }
+
+  /**
+   * {@return the expected SHA-256 digest of the module when resolved from the given source}
+   *
+   * @param module the name of the module
+   * @param source the location the module is about to be resolved from
+   */
+  public Optional<String> find(String module, URI source) {
+    var entry = entries.get(module);
+    if (entry == null || !entry.source().equals(source)) return Optional.empty();
+    return Optional.of(entry.sha256());
+  }
+
+  /**
+   * Records a module file that was resolved from the given source.
+   *
+   * @param module the name of the module
+   * @param source the location the module was resolved from
+   * @param target the module file
+   * @param size the size of the module file in bytes
+   * @param sha256 the hex-encoded SHA-256 digest of the module file
+   */
+  public void lock(String module, URI source, Path target, long size, String sha256) {
+    entries.put(module, new Entry(module, source, size, sha256, lastModified(target)));
+  }
+
+  /**
+   * Verifies that each locked module file is present and unchanged.
+   *
+   * <p>Files whose size and last-modified time match the recorded values are trusted without
+   * being read. Only files with a changed last-modified time are rehashed.
+   *
+   * @return a list of problem descriptions, empty if all locked modules are intact
+   */
+  public List<String> verify() {
+    var directory = file.getParent();
+    var problems = new ArrayList<String>();
+    for (var entry : List.copyOf(entries.values())) {
+      var module = entry.module();
+      var target = directory.resolve(module + ".jar");
+      if (!Files.isRegularFile(target)) {
+        problems.add("Module file not found: " + target);
+        continue;
+      }
+      var size = size(target);
+      if (size != entry.size()) {
+        problems.add("Size of %s changed: %d -> %d".formatted(target, entry.size(), size));
+        continue;
+      }
+      var modified = lastModified(target);
+      if (modified == entry.verified()) continue;
+      var sha256 = PathSupport.checksum(target, "SHA-256");
+      if (!sha256.equals(entry.sha256())) {
+        problems.add("Digest of %s changed: %s -> %s".formatted(target, entry.sha256(), sha256));
+        continue;
+      }
+      var source = entry.source();
+      entries.put(module, new Entry(module, source, entry.size(), sha256, modified));
+    }
+    return List.copyOf(problems);
+  }
+
+  public void write() {
+    var lines = new ArrayList<String>();
+    lines.add("# module source size sha256 verified");
+    entries.values().stream().map(Entry::toLine).forEach(lines::add);
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(file, lines);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing lock file failed: " + file, exception);
+    }
+  }
+
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+  }
+}
@@ -32,13 +32,21 @@ public interface ModulesSupport {
   static List<String> listMissingNames(List<ModuleFinder> finders, Set<String> more) {
     // Populate a set with all module names being in a "requires MODULE;" directive
     var requires = new TreeSet<>(more); // more required modules
-    for (var finder : finders) requires.addAll(required(finder)); // main, test, and others
+    for (var finder : finders) requires.addAll(requiredAtCompileTime(finder)); // main, test, ...
     // Remove names of declared modules from various module finders
-    requires.removeAll(declared(ModuleFinder.ofSystem()));
+    requires.removeAll(declaredSystemModuleNames());
     for (var finder : finders) requires.removeAll(declared(finder));
     return List.copyOf(requires);
   }
 
+  /** {@return the names of all system modules, computed once per JVM} */
+  static Set<String> declaredSystemModuleNames() {
+    class SystemModuleNames {
+      static final Set<String> SINGLETON = Set.copyOf(declared(ModuleFinder.ofSystem()));
+    }
+    return SystemModuleNames.SINGLETON;
+  }
+
   static TreeSet<String> declared(ModuleFinder finder) {
     return declared(finder.findAll().stream().map(ModuleReference::descriptor));
   }
@@ -60,6 +68,26 @@ public interface ModulesSupport {
         .collect(Collectors.toCollection(TreeSet::new));
   }
 
+  /**
+   * {@return the names of all modules required at compile time, including {@code requires static}}
+   */
+  static TreeSet<String> requiredAtCompileTime(ModuleFinder finder) {
+    return finder.findAll().stream()
+        .map(ModuleReference::descriptor)
+        .map(ModuleDescriptor::requires)
+        .flatMap(Set::stream)
+        .filter(ModulesSupport::requiredAtCompileTime)
+        .map(ModuleDescriptor.Requires::name)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  static boolean requiredAtCompileTime(ModuleDescriptor.Requires requires) {
+    var modifiers = requires.modifiers();
+    if (modifiers.contains(ModuleDescriptor.Requires.Modifier.MANDATED)) return false;
+    return !modifiers.contains(ModuleDescriptor.Requires.Modifier.SYNTHETIC);
+  }
+
+  /** {@return {@code true} if the given requires directive must be resolved at run time} */
   static boolean required(ModuleDescriptor.Requires requires) {
     var modifiers = requires.modifiers();
     if (modifiers.isEmpty() || modifiers.contains(ModuleDescriptor.Requires.Modifier.TRANSITIVE))
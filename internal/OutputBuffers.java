@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * Routes standard output and error streams into buffers of threads that capture their output.
+ *
+ * <p>Usage example:
+ *
+ * <pre>{@code
+ * try (var buffers = OutputBuffers.install()) {
+ *   var output = buffers.capture(() -> System.out.println("Hello"));
+ *   assert output.equals("Hello" + System.lineSeparator());
+ * }
+ * }</pre>
+ *
+ * <p>Only the thread running {@link #capture(Runnable)} writes into the buffer, and only until the
+ * runnable completes. All other threads, including threads started or reused by the runnable, like
+ * workers of a fork-join pool, write to the original streams.
+ */
+public final class OutputBuffers implements AutoCloseable {
+  private static final ThreadLocal<ByteArrayOutputStream> BUFFER = new ThreadLocal<>();
+
+  /** The standard streams replaced by the first installation, guarded by the class lock. */
+  private static PrintStream out, err;
+
+  /** The number of open installations, guarded by the class lock. */
+  private static int installations;
+
+  /**
+   * {@return an instance that routes the standard streams until it is closed}
+   *
+   * <p>Installations are reference-counted: the standard streams are replaced by the first and
+   * restored by the last installation being closed, in whatever order they are closed.
+   */
+  public static OutputBuffers install() {
+    synchronized (OutputBuffers.class) {
+      if (installations++ == 0) {
+        out = System.out;
+        err = System.err;
+        System.setOut(new PrintStream(new Router(out), true, out.charset()));
+        System.setErr(new PrintStream(new Router(err), true, err.charset()));
+      }
+      return new OutputBuffers(out.charset());
+    }
+  }
+
+  private final Charset charset;
+  private boolean closed;
+
+  private OutputBuffers(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * {@return the output written by the given runnable to the standard output and error streams}
+   *
+   * @param runnable the code to run in the current thread
+   */
+  public String capture(Runnable runnable) {
+    var outer = BUFFER.get(); // non-null when nested
+    var buffer = new ByteArrayOutputStream();
+    try {
+      BUFFER.set(buffer);
+      runnable.run();
+    } finally {
+      System.out.flush();
+      System.err.flush();
+      if (outer == null) BUFFER.remove();
+      else BUFFER.set(outer);
+    }
+    return buffer.toString(charset);
+  }
+
+  @Override
+  public void close() {
+    synchronized (OutputBuffers.class) {
+      if (closed) return;
+      closed = true;
+      if (--installations > 0) return;
+      System.out.flush();
+      System.err.flush();
+      System.setOut(out);
+      System.setErr(err);
+      out = null;
+      err = null;
+    }
+  }
+
+  private static final class Router extends OutputStream {
+    private final PrintStream fallback;
+
+    Router(PrintStream fallback) {
+      this.fallback = fallback;
+    }
+
+    @Override
+    public void write(int b) {
+      var buffer = BUFFER.get();
+      if (buffer != null) buffer.write(b);
+      else fallback.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+      var buffer = BUFFER.get();
+      if (buffer != null) buffer.write(bytes, offset, length);
+      else fallback.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() {
+      fallback.flush();
+    }
+  }
+}
@@ -5,39 +5,178 @@
 
 package run.bach.internal;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UncheckedIOException;
-import java.math.BigInteger;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.security.DigestOutputStream;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
-import run.bach.info.PackageUrl;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public interface PathSupport {
   static String checksum(Path file, String algorithm) {
+    return checksums(file, algorithm).get(algorithm);
+  }
+
+  /**
+   * {@return a map of algorithm names to hex-encoded checksums computed in a single pass}
+   *
+   * <p>Files smaller than 1 MiB are read into a heap byte buffer, larger files are memory-mapped in
+   * chunks of 16 MiB. The pseudo algorithm {@code "size"} yields the size of the file.
+   *
+   * @param file the file to compute checksums of
+   * @param algorithms the names of message digest algorithms, like {@code "SHA-256"}
+   */
+  static Map<String, String> checksums(Path file, String... algorithms) {
+    return checksums(file, null, algorithms);
+  }
+
+  /**
+   * {@return a map of files to their checksums, computed concurrently}
+   *
+   * <p>Each file is processed by its own virtual thread, at most as many at a time as there are
+   * available processors. Buffers for reading small files are reused between threads.
+   *
+   * @param files the files to compute checksums of
+   * @param algorithms the names of message digest algorithms, like {@code "SHA-256"}
+   * @see #checksums(Path, String...)
+   */
+  static Map<Path, Map<String, String>> checksums(Collection<Path> files, String... algorithms) {
+    var permits = new Semaphore(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    var buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+    var checksums = new ConcurrentHashMap<Path, Map<String, String>>();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var futures = new ArrayList<Future<?>>();
+      for (var file : files) {
+        Runnable task =
+            () -> {
+              permits.acquireUninterruptibly();
+              var buffer = buffers.poll(); // at most one buffer per permit is ever allocated
+              if (buffer == null) buffer = ByteBuffer.allocate(1024 * 1024);
+              try {
+                checksums.put(file, checksums(file, buffer, algorithms));
+              } finally {
+                buffers.offer(buffer);
+                permits.release();
+              }
+            };
+        futures.add(executor.submit(task));
+      }
+      for (var future : futures) future.get();
+    } catch (ExecutionException exception) {
+      if (exception.getCause() instanceof RuntimeException cause) throw cause;
+      throw new RuntimeException("Computing checksums failed", exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Computing checksums interrupted", exception);
+    }
+    return checksums;
+  }
+
+  private static Map<String, String> checksums(
+      Path file, ByteBuffer reusable, String... algorithms) {
     if (Files.notExists(file)) throw new RuntimeException("File not found: " + file);
-    try {
-      if ("size".equalsIgnoreCase(algorithm)) return Long.toString(Files.size(file));
-      var md = MessageDigest.getInstance(algorithm);
-      try (var source = new BufferedInputStream(new FileInputStream(file.toFile()));
-          var target = new DigestOutputStream(OutputStream.nullOutputStream(), md)) {
-        source.transferTo(target);
+    var checksums = new LinkedHashMap<String, String>();
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var size = channel.size();
+      var digests = new ArrayList<MessageDigest>();
+      for (var algorithm : algorithms) {
+        if ("size".equalsIgnoreCase(algorithm)) continue;
+        digests.add(MessageDigest.getInstance(algorithm));
+      }
+      if (!digests.isEmpty()) {
+        if (size < 1024 * 1024) {
+          var buffer =
+              reusable == null
+                  ? ByteBuffer.allocate((int) size)
+                  : reusable.clear().limit((int) size);
+          while (buffer.hasRemaining() && channel.read(buffer) > 0) {} // read fully
+          buffer.flip();
+          for (var digest : digests) digest.update(buffer.duplicate());
+        } else {
+          var chunk = 16 * 1024 * 1024L;
+          for (var position = 0L; position < size; position += chunk) {
+            var length = Math.min(chunk, size - position);
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (var digest : digests) digest.update(buffer.duplicate());
+          }
+        }
+      }
+      var hex = HexFormat.of();
+      var iterator = digests.iterator();
+      for (var algorithm : algorithms) {
+        if ("size".equalsIgnoreCase(algorithm)) {
+          checksums.put(algorithm, Long.toString(size));
+          continue;
+        }
+        checksums.put(algorithm, hex.formatHex(iterator.next().digest()));
       }
-      var format = "%0" + (md.getDigestLength() * 2) + "x";
-      return String.format(format, new BigInteger(1, md.digest()));
     } catch (Exception exception) {
       throw new RuntimeException(exception);
     }
+    return checksums;
+  }
+
+  /** Writes the content of a file to an output stream. */
+  @FunctionalInterface
+  interface ContentWriter {
+    void write(OutputStream stream) throws IOException;
+  }
+
+  /**
+   * Creates or replaces a file by writing a temporary sibling file first and moving it into place.
+   *
+   * <p>Readers, including other processes, see either the previous or the new content of the file,
+   * never a partially written one.
+   *
+   * @param file the file to create or replace
+   * @param writer the writer of the file's content
+   */
+  static void writeAtomically(Path file, ContentWriter writer) throws IOException {
+    var parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    var temporary = Files.createTempFile(parent, name(file, "file"), ".tmp");
+    try {
+      try (var stream = Files.newOutputStream(temporary)) {
+        writer.write(stream);
+      }
+      moveAtomically(temporary, file);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Moves a file to a target, replacing an existing one, atomically if the file system supports it.
+   *
+   * @param source the file to move
+   * @param target the path to move the file to
+   */
+  static void moveAtomically(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException exception) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
 
   static boolean isJarFile(Path path) {
@@ -70,21 +209,16 @@ public interface PathSupport {
     return name != null ? name.toString() : defaultName;
   }
 
-  static void copy(Path target, URI source) {
-    if (!Files.exists(target)) {
-      if (source.getScheme().equals("pkg")) {
-        source = PackageUrl.parse(source).toUri();
-      }
-      try (var stream =
-          source.getScheme().startsWith("http")
-              ? source.toURL().openStream()
-              : Files.newInputStream(Path.of(source))) {
-        var parent = target.getParent();
-        if (parent != null) Files.createDirectories(parent);
-        Files.copy(stream, target, StandardCopyOption.REPLACE_EXISTING);
-      } catch (IOException exception) {
-        throw new UncheckedIOException(exception);
-      }
+  static void deleteRecursively(Path path) {
+    if (Files.notExists(path)) return;
+    try (var stream = Files.walk(path)) {
+      for (var file : stream.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(file);
+    } catch (Exception exception) {
+      throw new RuntimeException("Deletion failed: " + path, exception);
     }
   }
+
+  static void copy(Path target, URI source) {
+    if (!Files.exists(target)) Downloader.ofSystem().download(target, source);
+  }
 }
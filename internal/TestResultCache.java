@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ResolvedModule;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A persistent record of test runs that passed, keyed by an arbitrary test run identifier.
+ *
+ * <p>Each passing test run is recorded with the fingerprint of its inputs. A test run may be
+ * skipped while the fingerprint of its inputs equals the recorded one. Set the {@code
+ * --rerun-tests} system property to {@code true} to run all tests regardless of recorded results;
+ * passing runs are still recorded.
+ *
+ * @param file the path to the properties file storing test run identifiers and fingerprints
+ */
+public record TestResultCache(Path file) {
+  /**
+   * {@return the fingerprint of a test run}
+   *
+   * <p>The fingerprint covers the given module and all modules it reads transitively, the Java
+   * runtime version, the command line of the test run, and the files found at the given paths.
+   *
+   * @param digests the cache of file digests to use
+   * @param module the module under test
+   * @param invocation the command line that performs the test run
+   * @param inputs the files and directories read by the test run, like test data
+   */
+  public static String fingerprint(
+      DigestCache digests, Module module, String invocation, List<Path> inputs) {
+    var configuration = module.getLayer().configuration();
+    var root = configuration.findModule(module.getName()).orElseThrow();
+    var closure = new TreeMap<String, ResolvedModule>();
+    var pending = new ArrayDeque<ResolvedModule>(List.of(root));
+    while (!pending.isEmpty()) {
+      var resolved = pending.pop();
+      if (closure.putIfAbsent(resolved.name(), resolved) != null) continue;
+      pending.addAll(resolved.reads());
+    }
+    var lines = new ArrayList<String>();
+    lines.add("java " + Runtime.version());
+    lines.add("call " + invocation);
+    lines.add("inputs");
+    lines.addAll(FingerprintSupport.digests(digests, inputs));
+    lines.add("modules");
+    for (var resolved : closure.values()) {
+      var location = resolved.reference().location().orElse(null);
+      if (location == null || !location.getScheme().equals("file")) {
+        lines.add(resolved.name() + ' ' + location); // a system module, covered by the version
+        continue;
+      }
+      lines.add(resolved.name());
+      lines.addAll(FingerprintSupport.digests(digests, List.of(Path.of(location))));
+    }
+    return FingerprintSupport.fingerprint(lines.stream());
+  }
+
+  /**
+   * {@return {@code true} if the test run passed with the given fingerprint of its inputs, and
+   * re-running all tests is not requested}
+   *
+   * @param key the identifier of the test run
+   * @param fingerprint the fingerprint of the inputs of the test run
+   */
+  public boolean passed(String key, String fingerprint) {
+    if (Boolean.getBoolean("--rerun-tests")) return false;
+    synchronized (TestResultCache.class) {
+      return fingerprint.equals(load().getProperty(key));
+    }
+  }
+
+  /**
+   * Records a passing test run.
+   *
+   * @param key the identifier of the test run
+   * @param fingerprint the fingerprint of the inputs of the test run
+   */
+  public void pass(String key, String fingerprint) {
+    synchronized (TestResultCache.class) {
+      var results = load();
+      results.setProperty(key, fingerprint);
+      store(results);
+    }
+  }
+
+  private Properties load() {
+    var results = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (var reader = Files.newBufferedReader(file)) {
+        results.load(reader);
+      } catch (IOException exception) {
+        results.clear(); // run all tests again
+      }
+    }
+    return results;
+  }
+
+  private void store(Properties results) {
+    try {
+      var comments = "Fingerprints of passed test runs";
+      PathSupport.writeAtomically(file, stream -> results.store(stream, comments));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing test results failed: " + file, exception);
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2024 Christian Stein
+ * Licensed under the Universal Permissive License v 1.0 -> https://opensource.org/license/upl
+ */
+
+package run.bach.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import run.bach.Tool;
+import run.bach.ToolCall;
+import run.bach.ToolNotFoundException;
+import run.bach.ToolRunner;
+
+/**
+ * An append-only binary log of executed tool calls.
+ *
+ * <p>The file starts with a magic number and a format version, followed by a sequence of entries.
+ * Each entry is composed of the carrier name, the arguments, the working directory, the begin
+ * instant, the duration, and the exit code of a tool run.
+ *
+ * <p>The journal is rotated once per JVM: before the first entry is appended, an existing journal
+ * file is renamed to its {@code .previous} sibling, replacing the journal of the run before.
+ *
+ * @param file the path to the journal file
+ */
+public record ToolCallJournal(Path file) {
+  public static final String FILE_NAME = "tool-calls.journal";
+
+  private static final int MAGIC = 0xBAC4CA11, VERSION = 1;
+
+  private static final Object LOCK = new Object();
+
+  /** Journal files rotated by this JVM, guarded by {@link #LOCK}. */
+  private static final Set<Path> ROTATED = new HashSet<>();
+
+  /** {@return the journal in the {@code .bach/out} directory of the current working directory} */
+  public static ToolCallJournal ofSystem() {
+    return new ToolCallJournal(Path.of(".bach", "out", FILE_NAME));
+  }
+
+  /**
+   * Records a single tool run.
+   *
+   * @param tool the carrier name of the tool
+   * @param arguments the arguments passed to the tool
+   * @param directory the working directory of the tool run
+   * @param begin the instant the tool run began
+   * @param duration the duration of the tool run
+   * @param code the exit code of the tool run
+   */
+  public record Entry(
+      String tool,
+      List<String> arguments,
+      Path directory,
+      Instant begin,
+      Duration duration,
+      int code) {
+    public Instant end() {
+      return begin.plus(duration);
+    }
+
+    public ToolCall toToolCall() {
+      return ToolCall.of(tool).addAll(arguments.stream());
+    }
+  }
+
+  public void append(Entry entry) {
+    var bytes = new ByteArrayOutputStream(256);
+    try (var data = new DataOutputStream(bytes)) {
+      writeString(data, entry.tool());
+      data.writeInt(entry.arguments().size());
+      for (var argument : entry.arguments()) writeString(data, argument);
+      writeString(data, entry.directory().toString());
+      data.writeLong(entry.begin().getEpochSecond());
+      data.writeInt(entry.begin().getNano());
+      data.writeLong(entry.duration().toNanos());
+      data.writeInt(entry.code());
+    } catch (IOException exception) {
+      throw new UncheckedIOException(exception);
+    }
+    synchronized (LOCK) {
+      try {
+        if (ROTATED.add(file.toAbsolutePath().normalize())) rotate();
+        var parent = file.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        if (Files.notExists(file) || Files.size(file) == 0) {
+          var header = new ByteArrayOutputStream(8);
+          try (var data = new DataOutputStream(header)) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+          }
+          Files.write(file, header.toByteArray());
+        }
+        Files.write(file, bytes.toByteArray(), StandardOpenOption.APPEND);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Append to journal failed: " + file, exception);
+      }
+    }
+  }
+
+  /** Renames an existing journal file to its {@code .previous} sibling. */
+  public void rotate() {
+    synchronized (LOCK) {
+      if (Files.notExists(file)) return;
+      var previous = file.resolveSibling(file.getFileName() + ".previous");
+      try {
+        Files.move(file, previous, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Rotating journal failed: " + file, exception);
+      }
+    }
+  }
+
+  public List<Entry> read() {
+    var entries = new ArrayList<Entry>();
+    try (var data = new DataInputStream(Files.newInputStream(file))) {
+      if (data.readInt() != MAGIC) throw new IllegalStateException("Not a journal: " + file);
+      var version = data.readInt();
+      if (version != VERSION) throw new IllegalStateException("Unsupported version: " + version);
+      while (true) {
+        String tool;
+        try {
+          tool = readString(data);
+        } catch (EOFException exception) {
+          break;
+        }
+        var size = data.readInt();
+        var arguments = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) arguments.add(readString(data));
+        var directory = Path.of(readString(data));
+        var begin = Instant.ofEpochSecond(data.readLong(), data.readInt());
+        var duration = Duration.ofNanos(data.readLong());
+        var code = data.readInt();
+        entries.add(new Entry(tool, List.copyOf(arguments), directory, begin, duration, code));
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Read journal failed: " + file, exception);
+    }
+    return List.copyOf(entries);
+  }
+
+  /**
+   * Re-executes all tool calls recorded in this journal.
+   *
+   * <p>In parallel mode, the files and directories read and written by each entry are derived from
+   * its arguments, see {@link Footprint}. An entry waits for all earlier entries that write what it
+   * reads or writes, or that read what it writes. An entry without a recognized output option may
+   * read and write anything: it waits for all earlier entries, and all later entries wait for it.
+   * If no entry declares an output, all entries are replayed sequentially.
+   *
+   * @param runner the tool runner used to execute recorded tool calls
+   * @param parallel whether to run independent tool calls concurrently
+   * @return the duration of the replay
+   */
+  public Duration replay(ToolRunner runner, boolean parallel) {
+    var entries = read().stream().sorted(Comparator.comparing(Entry::begin)).toList();
+    var directory = Path.of("").toAbsolutePath();
+    entries.stream()
+        .map(Entry::directory)
+        .filter(path -> !path.equals(directory))
+        .distinct()
+        .forEach(path -> runner.log(Level.WARNING, "Recorded in different directory: " + path));
+    var footprints = entries.stream().map(Footprint::of).toList();
+    if (parallel && footprints.stream().noneMatch(Footprint::isDeclared)) {
+      runner.log(Level.INFO, "No outputs declared by recorded tool calls, replaying sequentially");
+      parallel = false;
+    }
+    var start = System.nanoTime();
+    if (parallel) {
+      var futures = new ArrayList<CompletableFuture<Void>>();
+      try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (int j = 0; j < entries.size(); j++) {
+          var entry = entries.get(j);
+          var footprint = footprints.get(j);
+          var dependencies = new ArrayList<CompletableFuture<Void>>();
+          for (int i = 0; i < j; i++) {
+            if (footprint.isIndependentOf(footprints.get(i))) continue;
+            dependencies.add(futures.get(i));
+          }
+          var future =
+              CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                  .thenRunAsync(() -> replay(runner, entry), executor);
+          futures.add(future);
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+      }
+    } else {
+      for (var entry : entries) replay(runner, entry);
+    }
+    var duration = Duration.ofNanos(System.nanoTime() - start);
+    if (!entries.isEmpty()) {
+      var recorded = Duration.between(entries.getFirst().begin(), latest(entries));
+      var message = "Replayed %d tool call%s in %d ms, recorded run took %d ms";
+      var size = entries.size();
+      runner.log(
+          Level.INFO,
+          message.formatted(size, size == 1 ? "" : "s", duration.toMillis(), recorded.toMillis()));
+    }
+    return duration;
+  }
+
+  /**
+   * The files and directories read and written by a recorded tool call.
+   *
+   * <p>Values of well-known output options, like {@code -d} or {@code --output}, are outputs. All
+   * other arguments that are not options, split at path separators, and the directories given via
+   * {@code -C} are inputs. Paths are resolved against the recorded working directory.
+   *
+   * @param inputs the paths possibly read by the tool call
+   * @param outputs the paths written by the tool call, empty if unknown
+   */
+  record Footprint(Set<Path> inputs, Set<Path> outputs) {
+    static final Set<String> OUTPUT_OPTIONS =
+        Set.of("-d", "-s", "-h", "--dest", "--file", "--output", "--reports-dir");
+
+    static Footprint of(Entry entry) {
+      var directory = entry.directory();
+      var inputs = new HashSet<Path>();
+      var outputs = new HashSet<Path>();
+      var arguments = entry.arguments();
+      for (int i = 0; i < arguments.size(); i++) {
+        var argument = arguments.get(i);
+        var last = i + 1 == arguments.size();
+        if (OUTPUT_OPTIONS.contains(argument) && !last) {
+          add(outputs, directory, arguments.get(++i));
+          continue;
+        }
+        if (argument.equals("-C") && !last) { // jar -C DIR FILES
+          add(inputs, directory, arguments.get(++i));
+          i++;
+          continue;
+        }
+        var separator = argument.indexOf('=');
+        if (argument.startsWith("-")) {
+          if (separator == -1) continue;
+          var option = argument.substring(0, separator);
+          var value = argument.substring(separator + 1);
+          add(OUTPUT_OPTIONS.contains(option) ? outputs : inputs, directory, value);
+          continue;
+        }
+        add(inputs, directory, argument.substring(separator + 1)); // --patch-module M=PATH
+      }
+      return new Footprint(Set.copyOf(inputs), Set.copyOf(outputs));
+    }
+
+    private static void add(Set<Path> paths, Path directory, String value) {
+      for (var element : value.split(File.pathSeparator)) {
+        var glob = element.indexOf('*');
+        var string = glob == -1 ? element : element.substring(0, glob);
+        if (string.isBlank()) continue;
+        try {
+          paths.add(directory.resolve(string).normalize());
+        } catch (InvalidPathException exception) {
+          // not a path
+        }
+      }
+    }
+
+    boolean isDeclared() {
+      return !outputs.isEmpty();
+    }
+
+    boolean isIndependentOf(Footprint earlier) {
+      if (!isDeclared() || !earlier.isDeclared()) return false;
+      return !overlaps(inputs, earlier.outputs)
+          && !overlaps(outputs, earlier.inputs)
+          && !overlaps(outputs, earlier.outputs);
+    }
+
+    private static boolean overlaps(Set<Path> these, Set<Path> those) {
+      for (var one : these) {
+        for (var other : those) {
+          if (one.startsWith(other) || other.startsWith(one)) return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static void replay(ToolRunner runner, Entry entry) {
+    try {
+      runner.run(entry.toToolCall());
+    } catch (ToolNotFoundException exception) {
+      // carrier names of direct tools are of form "namespace/name@version"
+      var name = Tool.Identifier.of(entry.tool()).name();
+      if (name.equals(entry.tool())) throw exception;
+      runner.run(ToolCall.of(name).addAll(entry.arguments().stream()));
+    }
+  }
+
+  private static Instant latest(List<Entry> entries) {
+    return entries.stream().map(Entry::end).max(Comparator.naturalOrder()).orElseThrow();
+  }
+
+  private static void writeString(DataOutputStream data, String string) throws IOException {
+    var bytes = string.getBytes(StandardCharsets.UTF_8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  private static String readString(DataInputStream data) throws IOException {
+    var bytes = new byte[data.readInt()];
+    data.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
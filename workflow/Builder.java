@@ -5,6 +5,9 @@
 
 package run.bach.workflow;
 
+import run.bach.internal.DigestCache;
+import run.bach.internal.ModuleInfoCache;
+
 public interface Builder extends Action, Cleaner, Compiler, Preparer, Tester {
   default void build() {
     var description = builderUsesProjectDescription();
@@ -16,6 +19,8 @@ public interface Builder extends Action, Cleaner, Compiler, Preparer, Tester {
     prepare(); // resolve required and missing assets, aka "go offline"
     compile(); // translate module space source files into classes, modular JAR files, and an images
     test(); // execute programs using artifacts compiled artifacts
+    ModuleInfoCache.flushAll(); // store parsed module declarations for the next build
+    DigestCache.flushAll(); // store file digests for the next build
 
     say("Build of %s completed.".formatted(description));
   }
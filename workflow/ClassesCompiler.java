@@ -6,10 +6,25 @@
 package run.bach.workflow;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor.Requires;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import run.bach.ToolCall;
+import run.bach.internal.DigestCache;
+import run.bach.internal.FingerprintSupport;
+import run.bach.internal.OutputBuffers;
+import run.bach.internal.PathSupport;
 import run.bach.workflow.Structure.Space;
 
 /** Translate Java source files into class files. */
@@ -33,7 +48,11 @@ public interface ClassesCompiler extends Action {
       javac = classesCompilerWithModulePatches(javac);
       javac = classesCompilerWithEncoding(javac);
       javac = classesCompilerWithDestinationDirectory(javac);
-      classesCompilerRunJavacToolCall(javac);
+      if (classesCompilerDoesCompileIncrementally()) {
+        classesCompilerRunJavacToolCallIncrementally(javac);
+      } else {
+        classesCompilerRunJavacToolCallForModules(javac);
+      }
     } finally {
       SPACE.remove();
     }
@@ -104,4 +123,231 @@ public interface ClassesCompiler extends Action {
   default void classesCompilerRunJavacToolCall(ToolCall javac) {
     run(javac);
   }
+
+  default boolean classesCompilerDoesCompileModulesSeparately() {
+    return false;
+  }
+
+  /**
+   * Runs the given javac tool call, either as is or split into one call per module.
+   *
+   * @param javac the tool call compiling all modules listed by its {@code --module} argument
+   * @see #classesCompilerDoesCompileModulesSeparately()
+   */
+  default void classesCompilerRunJavacToolCallForModules(ToolCall javac) {
+    var arguments = javac.arguments();
+    var index = arguments.indexOf("--module") + 1;
+    var names = List.of(arguments.get(index).split(","));
+    if (names.size() == 1 || !classesCompilerDoesCompileModulesSeparately()) {
+      classesCompilerRunJavacToolCall(javac);
+      return;
+    }
+    var waves = classesCompilerComputeWaves(names);
+    log("Compiling %d modules in %d waves: %s".formatted(names.size(), waves.size(), waves));
+    for (var wave : waves) {
+      var calls = new ArrayList<ToolCall>();
+      for (var name : wave) {
+        var list = new ArrayList<>(arguments);
+        list.set(index, name);
+        list.add("-implicit:none"); // never write classes of upstream modules
+        calls.add(new ToolCall(javac.tool(), List.copyOf(list)));
+      }
+      if (calls.size() > 1 && classesCompilerDoesCompileModulesConcurrently()) {
+        classesCompilerRunJavacToolCallsConcurrently(calls);
+      } else {
+        calls.forEach(this::classesCompilerRunJavacToolCall);
+      }
+    }
+  }
+
+  default boolean classesCompilerDoesCompileModulesConcurrently() {
+    return true;
+  }
+
+  default int classesCompilerUsesConcurrency() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Runs the given javac tool calls of a wave at the same time.
+   *
+   * <p>Each call runs on a virtual thread that inherits the space context. Its output is buffered
+   * and printed as a whole in the order of the given calls after all calls finished. A failing call
+   * doesn't stop the others; the first failure is rethrown after all calls finished.
+   *
+   * @param calls the javac tool calls that don't depend on each other
+   * @see #classesCompilerUsesConcurrency()
+   */
+  default void classesCompilerRunJavacToolCallsConcurrently(List<ToolCall> calls) {
+    var permits = new Semaphore(Math.max(1, classesCompilerUsesConcurrency()));
+    var outputs = new String[calls.size()];
+    var failures = new Throwable[calls.size()];
+    var factory = Thread.ofVirtual().name("javac-", 1).factory(); // inherits space context
+    try (var buffers = OutputBuffers.install();
+        var executor = Executors.newThreadPerTaskExecutor(factory)) {
+      for (int i = 0; i < calls.size(); i++) {
+        var index = i;
+        var call = calls.get(index);
+        Runnable runnable =
+            () -> {
+              try {
+                classesCompilerRunJavacToolCall(call);
+              } catch (RuntimeException | Error exception) {
+                failures[index] = exception;
+              }
+            };
+        executor.submit(
+            () -> {
+              permits.acquireUninterruptibly();
+              try {
+                outputs[index] = buffers.capture(runnable);
+              } finally {
+                permits.release();
+              }
+            });
+      }
+    }
+    for (var output : outputs) if (output != null) System.out.print(output);
+    for (var failure : failures) {
+      if (failure instanceof RuntimeException exception) throw exception;
+      if (failure instanceof Error error) throw error;
+    }
+  }
+
+  /**
+   * {@return a list of waves of module names, each wave only requiring modules of earlier waves}
+   *
+   * @param names the names of modules of the current space to compile
+   */
+  default List<List<String>> classesCompilerComputeWaves(List<String> names) {
+    var modules = space().modules();
+    var pending = new TreeSet<>(names);
+    var waves = new ArrayList<List<String>>();
+    while (!pending.isEmpty()) {
+      var wave = new ArrayList<String>();
+      for (var name : pending) {
+        var module = modules.find(name).orElseThrow();
+        var requires = module.descriptor().requires().stream().map(Requires::name);
+        if (requires.noneMatch(pending::contains)) wave.add(name);
+      }
+      if (wave.isEmpty()) throw new IllegalStateException("Cyclic dependency between " + pending);
+      wave.forEach(pending::remove);
+      waves.add(List.copyOf(wave));
+    }
+    return List.copyOf(waves);
+  }
+
+  default boolean classesCompilerDoesCompileIncrementally() {
+    return true;
+  }
+
+  default Path classesCompilerUsesFingerprintsFile() {
+    return classesCompilerUsesDestinationDirectory().resolve(".fingerprints");
+  }
+
+  /**
+   * Runs javac only for modules whose fingerprint changed since their last compilation, and for
+   * all modules of the current space that depend on them.
+   *
+   * @param javac the tool call compiling all modules of the current space
+   * @see #classesCompilerComputeFingerprints(ToolCall)
+   */
+  default void classesCompilerRunJavacToolCallIncrementally(ToolCall javac) {
+    var space = space();
+    var destination = classesCompilerUsesDestinationDirectory();
+    var file = classesCompilerUsesFingerprintsFile();
+    var recorded = new Properties();
+    if (Files.isRegularFile(file)) {
+      try (var reader = Files.newBufferedReader(file)) {
+        recorded.load(reader);
+      } catch (IOException exception) {
+        recorded.clear(); // compile all modules
+      }
+    }
+    var computed = classesCompilerComputeFingerprints(javac);
+    var changed = new TreeSet<String>();
+    for (var entry : computed.entrySet()) {
+      var module = entry.getKey();
+      var unchanged = entry.getValue().equals(recorded.getProperty(module));
+      if (unchanged && Files.isDirectory(destination.resolve(module))) continue;
+      changed.add(module);
+    }
+    var modules = space.modules().list();
+    if (changed.isEmpty()) {
+      log("All %d modules in %s space are up-to-date".formatted(modules.size(), space.name()));
+      return;
+    }
+    var grown = true;
+    while (grown) { // add modules of this space depending on a changed module
+      grown = false;
+      for (var module : modules) {
+        if (changed.contains(module.name())) continue;
+        var requires = module.descriptor().requires().stream().map(Requires::name);
+        if (requires.anyMatch(changed::contains)) grown = changed.add(module.name());
+      }
+    }
+    var size = modules.size();
+    log("Compiling %d of %d modules in %s space".formatted(changed.size(), size, space.name()));
+    changed.forEach(recorded::remove);
+    classesCompilerStoreFingerprints(file, recorded);
+    for (var module : changed) PathSupport.deleteRecursively(destination.resolve(module));
+    var arguments = new ArrayList<>(javac.arguments());
+    arguments.set(arguments.indexOf("--module") + 1, String.join(",", changed));
+    classesCompilerRunJavacToolCallForModules(new ToolCall(javac.tool(), List.copyOf(arguments)));
+    changed.forEach(module -> recorded.setProperty(module, computed.get(module)));
+    classesCompilerStoreFingerprints(file, recorded);
+  }
+
+  /**
+   * {@return a map of module names to fingerprints of all modules of the current space}
+   *
+   * <p>A fingerprint covers the digests of the module's source and resource files, including those
+   * targeting specific releases, the arguments passed to javac except for the list of modules to
+   * compile, and the digests of all JAR files on the module path.
+   *
+   * @param javac the tool call compiling all modules of the current space
+   */
+  default Map<String, String> classesCompilerComputeFingerprints(ToolCall javac) {
+    var digests = DigestCache.of(workflow().folders().out());
+    var common = new ArrayList<String>();
+    var arguments = javac.arguments();
+    for (int i = 0; i < arguments.size(); i++) {
+      if (arguments.get(i).equals("--module")) i++; // skip the list of modules
+      else common.add(arguments.get(i));
+    }
+    var modulePath = space().toModulePath(workflow().folders()).orElse("");
+    for (var element : modulePath.split(File.pathSeparator)) {
+      if (element.isEmpty()) continue;
+      var jars = PathSupport.list(Path.of(element), PathSupport::isJarFile);
+      common.addAll(FingerprintSupport.digests(digests, jars));
+    }
+    var fingerprints = new TreeMap<String, String>();
+    for (var module : space().modules()) {
+      var lines = new ArrayList<>(common);
+      lines.add("sources");
+      lines.addAll(FingerprintSupport.digests(digests, module.base().sources()));
+      lines.add("resources");
+      lines.addAll(FingerprintSupport.digests(digests, module.base().resources()));
+      for (var release : new TreeSet<>(module.targeted().keySet())) {
+        var folders = module.targeted().get(release);
+        lines.add("sources " + release);
+        lines.addAll(FingerprintSupport.digests(digests, folders.sources()));
+        lines.add("resources " + release);
+        lines.addAll(FingerprintSupport.digests(digests, folders.resources()));
+      }
+      fingerprints.put(module.name(), FingerprintSupport.fingerprint(lines.stream()));
+    }
+    return fingerprints;
+  }
+
+  private static void classesCompilerStoreFingerprints(Path file, Properties fingerprints) {
+    try {
+      Files.createDirectories(file.getParent());
+      try (var writer = Files.newBufferedWriter(file)) {
+        fingerprints.store(writer, "Module fingerprints");
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing fingerprints failed: " + file, exception);
+    }
+  }
 }
@@ -5,6 +5,12 @@
 
 package run.bach.workflow;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
 import run.bach.workflow.Structure.Space;
 import run.bach.workflow.Structure.Spaces;
 
@@ -20,11 +26,54 @@ public interface Compiler extends Action, ClassesCompiler, ModulesCompiler, Imag
     }
     var size = names.size();
     say("Compiling %d module space%s %s ...".formatted(size, size == 1 ? "" : "s", names));
+    if (size > 1 && compilerDoesCompileSpacesConcurrently()) {
+      compileConcurrently(spaces);
+      return;
+    }
     for (Space space : spaces) {
       compile(space);
     }
   }
 
+  /**
+   * Translates source files into modular JAR files for all given module spaces, compiling spaces
+   * that don't depend on each other at the same time.
+   *
+   * <p>A space is compiled as soon as all spaces it requires are compiled. Each space is compiled
+   * on a fresh virtual thread that does not inherit thread-local values, which keeps the space
+   * context of one compilation away from all others.
+   */
+  default void compileConcurrently(Spaces spaces) {
+    var names = Set.copyOf(spaces.names());
+    var futures = new HashMap<String, CompletableFuture<Void>>();
+    var factory = Thread.ofVirtual().name("compile-", 1).inheritInheritableThreadLocals(false);
+    try (var executor = Executors.newThreadPerTaskExecutor(factory.factory())) {
+      var pending = new ArrayList<>(spaces.list());
+      while (!pending.isEmpty()) {
+        var scheduled = false;
+        for (var iterator = pending.iterator(); iterator.hasNext(); ) {
+          var space = iterator.next();
+          var required = space.requires().names().stream().filter(names::contains).toList();
+          if (!futures.keySet().containsAll(required)) continue;
+          var upstream = required.stream().map(futures::get).toArray(CompletableFuture[]::new);
+          var ready = CompletableFuture.allOf(upstream);
+          futures.put(space.name(), ready.thenRunAsync(() -> compile(space), executor));
+          iterator.remove();
+          scheduled = true;
+        }
+        if (!scheduled) {
+          var cycle = pending.stream().map(Space::name).toList();
+          throw new IllegalStateException("Cyclic dependency between spaces: " + cycle);
+        }
+      }
+      CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException exception) {
+      if (exception.getCause() instanceof RuntimeException cause) throw cause;
+      if (exception.getCause() instanceof Error cause) throw cause;
+      throw exception;
+    }
+  }
+
   /** Translates source files into modular JAR files for the specified module space. */
   default void compile(Space space) {
     var name = space.name();
@@ -45,6 +94,10 @@ public interface Compiler extends Action, ClassesCompiler, ModulesCompiler, Imag
     return workflow().structure().spaces();
   }
 
+  default boolean compilerDoesCompileSpacesConcurrently() {
+    return true;
+  }
+
   default boolean compilerDoesCreateCustomRuntimeImage(Space space) {
     return space.is(Space.Flag.COMPILE_RUNTIME_IMAGE);
   }
@@ -5,8 +5,18 @@
 
 package run.bach.workflow;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import run.bach.ToolCall;
+import run.bach.internal.DigestCache;
+import run.bach.internal.FingerprintSupport;
+import run.bach.internal.PathSupport;
 import run.bach.workflow.Structure.Space;
 
 /** Assemble and optimize a set of modules and their dependencies into a custom runtime image. */
@@ -27,7 +37,11 @@ public interface ImageCompiler extends Action {
       jlink = imageCompilerWithLauncher(jlink);
       jlink = imageCompilerWithModules(jlink);
       jlink = imageCompilerWithModulePath(jlink);
-      imageCompilerRunJLinkToolCall(jlink);
+      if (imageCompilerDoesCacheImage()) {
+        imageCompilerRunJLinkToolCallCached(jlink);
+      } else {
+        imageCompilerRunJLinkToolCall(jlink);
+      }
     } finally {
       SPACE.remove();
     }
@@ -51,9 +65,124 @@ public interface ImageCompiler extends Action {
     run(jlink);
   }
 
+  default Path imageCompilerUsesOutputDirectory() {
+    return workflow().folders().out(space().name(), "image");
+  }
+
   default ToolCall imageCompilerWithOutputDirectory(ToolCall jlink) {
-    var directory = workflow().folders().out(space().name(), "image");
-    return jlink.add("--output", directory);
+    return jlink.add("--output", imageCompilerUsesOutputDirectory());
+  }
+
+  default boolean imageCompilerDoesCacheImage() {
+    return true;
+  }
+
+  default Path imageCompilerUsesFingerprintFile() {
+    var image = imageCompilerUsesOutputDirectory();
+    return image.resolveSibling(image.getFileName() + ".fingerprint");
+  }
+
+  /**
+   * Runs jlink only if the image is missing or its fingerprint changed.
+   *
+   * <p>The fingerprint of an image covers the arguments passed to jlink except for the launcher,
+   * the digests of all JAR files on the module path, and the version and home of the current JDK.
+   * If only the launcher changed, the launcher scripts of the existing image are regenerated.
+   *
+   * @param jlink the jlink tool call creating the image
+   */
+  default void imageCompilerRunJLinkToolCallCached(ToolCall jlink) {
+    var image = imageCompilerUsesOutputDirectory();
+    var file = imageCompilerUsesFingerprintFile();
+    var lines = new ArrayList<String>();
+    String launcher = "";
+    var arguments = jlink.arguments();
+    for (int i = 0; i < arguments.size(); i++) {
+      if (arguments.get(i).equals("--launcher")) launcher = arguments.get(++i);
+      else lines.add(arguments.get(i));
+    }
+    var modulePath = space().toRuntimeSpace().toModulePath(workflow().folders()).orElse("");
+    var digests = DigestCache.of(workflow().folders().out());
+    for (var element : modulePath.split(File.pathSeparator)) {
+      if (element.isEmpty()) continue;
+      var jars = PathSupport.list(Path.of(element), PathSupport::isJarFile);
+      lines.addAll(FingerprintSupport.digests(digests, jars));
+    }
+    lines.add(Runtime.version() + " " + System.getProperty("java.home"));
+    var fingerprint = FingerprintSupport.fingerprint(lines.stream());
+    var recorded = List.<String>of();
+    try {
+      if (Files.isRegularFile(file)) recorded = Files.readAllLines(file);
+    } catch (IOException exception) {
+      // recreate the image
+    }
+    var cached = Files.isDirectory(image) && recorded.size() == 2;
+    if (cached && recorded.getFirst().equals(fingerprint)) {
+      if (recorded.getLast().equals(launcher)) {
+        log("Image is up-to-date: " + image.toUri());
+        return;
+      }
+      if (!launcher.isEmpty() && !recorded.getLast().isEmpty()) {
+        log("Regenerating launcher of image " + image.toUri());
+        imageCompilerRegenerateLauncher(image, recorded.getLast(), launcher);
+        imageCompilerStoreFingerprint(file, fingerprint, launcher);
+        return;
+      }
+    }
+    PathSupport.deleteRecursively(file);
+    PathSupport.deleteRecursively(image); // jlink refuses to write into an existing directory
+    imageCompilerRunJLinkToolCall(jlink);
+    imageCompilerStoreFingerprint(file, fingerprint, launcher);
+  }
+
+  /**
+   * Replaces the launcher scripts of an image like jlink's {@code --launcher} option creates them.
+   *
+   * @param image the image directory
+   * @param previous the previous launcher of format {@code <name>=<module>[/<main-class>]}
+   * @param launcher the new launcher of format {@code <name>=<module>[/<main-class>]}
+   */
+  default void imageCompilerRegenerateLauncher(Path image, String previous, String launcher) {
+    var bin = image.resolve("bin");
+    var previousName = previous.substring(0, previous.indexOf('='));
+    var name = launcher.substring(0, launcher.indexOf('='));
+    var target = launcher.substring(launcher.indexOf('=') + 1); // <module>[/<main-class>]
+    try {
+      Files.deleteIfExists(bin.resolve(previousName));
+      Files.deleteIfExists(bin.resolve(previousName + ".bat"));
+      if (Files.exists(bin.resolve("java.exe"))) {
+        var script =
+            """
+            @echo off
+            set JLINK_VM_OPTIONS=
+            set DIR=%~dp0
+            "%DIR%\\java" %JLINK_VM_OPTIONS% -m {target} %*
+            """;
+        Files.writeString(bin.resolve(name + ".bat"), script.replace("{target}", target));
+        return;
+      }
+      var script =
+          """
+          #!/bin/sh
+          JLINK_VM_OPTIONS=
+          DIR=`dirname $0`
+          $DIR/java $JLINK_VM_OPTIONS -m {target} "$@"
+          """;
+      var file = bin.resolve(name);
+      Files.writeString(file, script.replace("{target}", target));
+      if (!file.toFile().setExecutable(true, false)) log("Can't set executable flag: " + file);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Regenerating launcher failed: " + launcher, exception);
+    }
+  }
+
+  private static void imageCompilerStoreFingerprint(Path file, String image, String launcher) {
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(file, List.of(image, launcher));
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing fingerprint failed: " + file, exception);
+    }
   }
 
   default ToolCall imageCompilerWithLauncher(ToolCall jlink) {
@@ -5,18 +5,39 @@
 
 package run.bach.workflow;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.module.FindException;
 import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.spi.ToolProvider;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
 import run.bach.Tool;
 import run.bach.ToolCall;
 import run.bach.ToolNotFoundException;
+import run.bach.internal.DigestCache;
+import run.bach.internal.OutputBuffers;
+import run.bach.internal.PathSupport;
+import run.bach.internal.TestResultCache;
+import run.bach.workflow.Structure.DeclaredModule;
 import run.bach.workflow.Structure.Space;
 
 public interface JUnitTester extends Action {
+  String JUNIT_CONSOLE_LAUNCHER = "org.junit.platform.console.ConsoleLauncher";
+
   // TODO Replace with java.lang.ScopedValue of https://openjdk.org/jeps/464
   InheritableThreadLocal<Space> SPACE = new InheritableThreadLocal<>();
 
@@ -42,6 +63,33 @@ public interface JUnitTester extends Action {
   }
 
   default void testViaJUnit(Module module) {
+    var name = module.getName();
+    var shards = junitTesterUsesShardCount(module);
+    var junit =
+        shards > 1
+            ? junitTesterUsesJavaToolCallForShard(module)
+            : junitTesterUsesJUnitToolCallInCurrentProcess(module);
+    var invocation = (shards > 1 ? shards + " shards of " : "") + junit.toCommandLine();
+    var cached = junitTesterDoesCacheTestResults();
+    var cache = new TestResultCache(junitTesterUsesTestResultsFile());
+    var key = space().name() + ":junit:" + name;
+    var inputs = junitTesterUsesTestResultInputs(module);
+    var digests = DigestCache.of(workflow().folders().out());
+    var fingerprint =
+        cached ? TestResultCache.fingerprint(digests, module, invocation, inputs) : "";
+    if (cached && cache.passed(key, fingerprint)) {
+      say("Skipped JUnit tests of module %s, they passed with unchanged inputs".formatted(name));
+      return;
+    }
+    if (shards > 1) {
+      testViaJUnitInForkedProcesses(module, shards);
+    } else {
+      junitTesterRunJUnitToolCall(junit);
+    }
+    if (cached) cache.pass(key, fingerprint);
+  }
+
+  default ToolCall junitTesterUsesJUnitToolCallInCurrentProcess(Module module) {
     var layer = module.getLayer();
     var tool =
         ServiceLoader.load(layer, ToolProvider.class).stream()
@@ -54,7 +102,35 @@ public interface JUnitTester extends Action {
     var junit = junitTestUsesJUnitToolCall(tool);
     junit = junitTesterUsesSelector(junit, module);
     junit = junitTesterUsesReportsDirectory(junit, module);
-    junitTesterRunJUnitToolCall(junit);
+    return junit;
+  }
+
+  /**
+   * {@return {@code true} to skip modules whose tests passed with unchanged inputs, default: true}
+   *
+   * <p>Inputs are the module graph and {@link #junitTesterUsesTestResultInputs(Module)}: disable
+   * this for tests reading other inputs, or set the {@code --rerun-tests} system property.
+   *
+   * @see TestResultCache
+   */
+  default boolean junitTesterDoesCacheTestResults() {
+    return true;
+  }
+
+  /**
+   * {@return the files and directories read by the tests of the given module}
+   *
+   * <p>Defaults to the content root of the declared module, which usually contains test data.
+   *
+   * @param module the module to test
+   */
+  default List<Path> junitTesterUsesTestResultInputs(Module module) {
+    var declared = space().modules().find(module.getName());
+    return declared.map(DeclaredModule::content).map(List::of).orElse(List.of());
+  }
+
+  default Path junitTesterUsesTestResultsFile() {
+    return workflow().folders().out("test", "results.properties");
   }
 
   default List<String> junitTesterUsesModuleNamesForTesting() {
@@ -93,4 +169,255 @@ public interface JUnitTester extends Action {
   default void junitTesterRunJUnitToolCall(ToolCall junit) {
     run(junit);
   }
+
+  /**
+   * {@return the number of forked processes to run the tests of the given module in}
+   *
+   * <p>A value less than {@code 2} runs all tests of the module in the current process.
+   *
+   * @param module the module to test
+   */
+  default int junitTesterUsesShardCount(Module module) {
+    return 1;
+  }
+
+  /**
+   * Runs the tests of a module in shards, each shard being a forked Java process.
+   *
+   * <p>Test classes are distributed to shards balanced by their durations recorded by earlier runs.
+   * Each shard launches the JUnit Platform Console Launcher on the runtime module path of the
+   * current space. Reports of all shards are merged into the reports directory of the module.
+   *
+   * @param module the module to test
+   * @param count the number of shards
+   */
+  default void testViaJUnitInForkedProcesses(Module module, int count) {
+    var name = module.getName();
+    var classes = junitTesterUsesClassNamesForSharding(module);
+    if (classes.isEmpty()) {
+      log("No classes found in module " + name);
+      return;
+    }
+    var file = junitTesterUsesDurationsFile(module);
+    var durations = junitTesterReadDurations(file);
+    var shards = junitTesterComputeShards(classes, durations, count);
+    var size = shards.size();
+    say("Testing via JUnit in %d forked processes for module %s ...".formatted(size, name));
+    var reports = workflow().folders().out("test", "reports", "junit", name);
+    PathSupport.deleteRecursively(reports);
+    var failures = new ConcurrentHashMap<Integer, Throwable>();
+    var factory = Thread.ofVirtual().name("junit-shard-", 1).factory();
+    try (var buffers = OutputBuffers.install();
+        var executor = Executors.newThreadPerTaskExecutor(factory)) {
+      for (int i = 0; i < size; i++) {
+        var shard = i + 1;
+        var selections = junitTesterWriteClassSelections(module, shard, shards.get(i));
+        var call =
+            junitTesterUsesJavaToolCallForShard(module)
+                .add("@" + selections)
+                .add("--reports-dir", reports.resolve("shard-" + shard));
+        executor.submit(
+            () -> {
+              var output =
+                  buffers.capture(
+                      () -> {
+                        try {
+                          junitTesterRunJUnitToolCall(call);
+                        } catch (RuntimeException exception) {
+                          failures.put(shard, exception);
+                        }
+                      });
+              var status = failures.containsKey(shard) ? "FAILED" : "Passed";
+              var message = "%s shard %d of %d for module %s".formatted(status, shard, size, name);
+              say(message + System.lineSeparator() + output.indent(2).stripTrailing());
+            });
+      }
+    }
+    var measured = new TreeMap<String, Long>();
+    for (int shard = 1; shard <= size; shard++) {
+      measured.putAll(junitTesterMergeReports(reports.resolve("shard-" + shard), reports, shard));
+    }
+    var recorded = new TreeMap<String, Long>(); // only current classes, removed ones are dropped
+    for (var type : classes) {
+      var millis = measured.containsKey(type) ? measured.get(type) : durations.get(type);
+      if (millis != null) recorded.put(type, millis);
+    }
+    junitTesterWriteDurations(file, recorded);
+    if (failures.isEmpty()) return;
+    var message = "%d of %d shards failed for module %s".formatted(failures.size(), size, name);
+    var exception = new RuntimeException(message);
+    failures.values().forEach(exception::addSuppressed);
+    throw exception;
+  }
+
+  /** {@return the names of all top-level classes of the given module, sorted alphabetically} */
+  default List<String> junitTesterUsesClassNamesForSharding(Module module) {
+    var name = module.getName();
+    var resolved = module.getLayer().configuration().findModule(name).orElseThrow();
+    try (var reader = resolved.reference().open()) {
+      return reader
+          .list()
+          .filter(entry -> entry.endsWith(".class"))
+          .filter(entry -> !entry.startsWith("META-INF/"))
+          .filter(entry -> !entry.endsWith("module-info.class"))
+          .filter(entry -> !entry.contains("$")) // nested classes are selected by their host
+          .map(entry -> entry.substring(0, entry.length() - 6).replace('/', '.'))
+          .sorted()
+          .toList();
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Listing classes failed: " + name, exception);
+    }
+  }
+
+  default Path junitTesterUsesDurationsFile(Module module) {
+    return workflow().folders().out("test", "durations", module.getName() + ".properties");
+  }
+
+  /**
+   * {@return the java tool call launching the JUnit Platform Console Launcher in a shard}
+   *
+   * <p>The classes to select and the reports directory of the shard are appended to this call.
+   *
+   * @param module the module to test
+   */
+  default ToolCall junitTesterUsesJavaToolCallForShard(Module module) {
+    var folders = workflow().folders();
+    var path = space().toRuntimeSpace().toModulePath(folders).orElse(".");
+    return ToolCall.of("java")
+        .add("-ea")
+        .add("--module-path", path)
+        .add("--add-modules", module.getName())
+        .add("--module", "org.junit.platform.console/" + JUNIT_CONSOLE_LAUNCHER)
+        .add("execute");
+  }
+
+  /**
+   * Writes the class selections of a shard into an argument file read by the JUnit launcher.
+   *
+   * <p>Selecting classes via an argument file keeps the command line short for any number of
+   * classes.
+   *
+   * @param module the module to test
+   * @param shard the number of the shard
+   * @param classes the names of the classes to select
+   * @return the path to the argument file
+   */
+  private Path junitTesterWriteClassSelections(Module module, int shard, List<String> classes) {
+    var file = workflow().folders().out("test", "shards", module.getName(), shard + ".args");
+    var lines = classes.stream().map(name -> "--select-class " + name).toList();
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(file, lines);
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing class selections failed: " + file, exception);
+    }
+    return file;
+  }
+
+  /**
+   * {@return a list of shards, each being a list of class names}
+   *
+   * <p>Classes are assigned to the least-loaded shard, longest-running classes first. Classes
+   * without a recorded duration are assumed to take as long as an average recorded class.
+   *
+   * @param classes the names of classes to distribute
+   * @param durations the map of class names to durations in milliseconds recorded earlier
+   * @param count the maximum number of shards
+   */
+  default List<List<String>> junitTesterComputeShards(
+      List<String> classes, Map<String, Long> durations, int count) {
+    var average =
+        (long) durations.values().stream().mapToLong(Long::longValue).average().orElse(1);
+    var sorted = new ArrayList<>(classes);
+    sorted.sort(
+        Comparator.comparing((String name) -> durations.getOrDefault(name, average))
+            .reversed()
+            .thenComparing(Comparator.naturalOrder()));
+    var size = Math.min(count, sorted.size());
+    var loads = new long[size];
+    var shards = new ArrayList<List<String>>();
+    for (int i = 0; i < size; i++) shards.add(new ArrayList<>());
+    for (var name : sorted) {
+      var least = 0;
+      for (int i = 1; i < size; i++) if (loads[i] < loads[least]) least = i;
+      loads[least] += Math.max(1, durations.getOrDefault(name, average));
+      shards.get(least).add(name);
+    }
+    return shards.stream().map(List::copyOf).toList();
+  }
+
+  /**
+   * Moves all report files of a shard into the reports directory of the module.
+   *
+   * @param source the reports directory of a single shard
+   * @param target the reports directory of the module
+   * @param shard the number of the shard, used to make file names unique
+   * @return a map of top-level class names to durations in milliseconds read from XML reports
+   */
+  private static Map<String, Long> junitTesterMergeReports(Path source, Path target, int shard) {
+    var durations = new TreeMap<String, Long>();
+    for (var file : PathSupport.list(source, Files::isRegularFile)) {
+      var name = file.getFileName().toString();
+      if (name.startsWith("TEST-") && name.endsWith(".xml")) {
+        junitTesterReadReportDurations(file, durations);
+      }
+      var dot = name.lastIndexOf('.') < 0 ? name.length() : name.lastIndexOf('.');
+      var unique = name.substring(0, dot) + "-shard-" + shard + name.substring(dot);
+      try {
+        Files.move(file, target.resolve(unique), StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException exception) {
+        throw new UncheckedIOException("Moving report failed: " + file, exception);
+      }
+    }
+    PathSupport.deleteRecursively(source);
+    return durations;
+  }
+
+  private static void junitTesterReadReportDurations(Path file, Map<String, Long> durations) {
+    try {
+      var factory = DocumentBuilderFactory.newInstance();
+      var document = factory.newDocumentBuilder().parse(file.toFile());
+      var testcases = document.getElementsByTagName("testcase");
+      for (int i = 0; i < testcases.getLength(); i++) {
+        var testcase = (Element) testcases.item(i);
+        var classname = testcase.getAttribute("classname");
+        var time = testcase.getAttribute("time");
+        if (classname.isEmpty() || time.isEmpty()) continue;
+        var dollar = classname.indexOf('$');
+        var host = dollar < 0 ? classname : classname.substring(0, dollar);
+        var millis = Math.round(Double.parseDouble(time) * 1000);
+        durations.merge(host, millis, Long::sum);
+      }
+    } catch (Exception exception) {
+      // durations are optional, ignore unreadable reports
+    }
+  }
+
+  private static Map<String, Long> junitTesterReadDurations(Path file) {
+    var durations = new TreeMap<String, Long>();
+    if (!Files.isRegularFile(file)) return durations;
+    var properties = new Properties();
+    try (var reader = Files.newBufferedReader(file)) {
+      properties.load(reader);
+      for (var name : properties.stringPropertyNames()) {
+        durations.put(name, Long.parseLong(properties.getProperty(name)));
+      }
+    } catch (IOException | NumberFormatException exception) {
+      durations.clear(); // distribute classes evenly
+    }
+    return durations;
+  }
+
+  private static void junitTesterWriteDurations(Path file, Map<String, Long> durations) {
+    var properties = new Properties();
+    durations.forEach((name, millis) -> properties.setProperty(name, Long.toString(millis)));
+    try {
+      Files.createDirectories(file.getParent());
+      try (var writer = Files.newBufferedWriter(file)) {
+        properties.store(writer, "Durations of test classes in milliseconds");
+      }
+    } catch (IOException exception) {
+      throw new UncheckedIOException("Writing durations failed: " + file, exception);
+    }
+  }
 }
@@ -5,9 +5,14 @@
 
 package run.bach.workflow;
 
+import java.lang.module.FindException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import run.bach.ToolCall;
+import run.bach.internal.DigestCache;
+import run.bach.internal.TestResultCache;
+import run.bach.workflow.Structure.DeclaredModule;
 import run.bach.workflow.Structure.Launcher;
 import run.bach.workflow.Structure.Space;
 
@@ -39,13 +44,64 @@ public interface JavaTester extends Action {
     java = javaTesterWithModulePath(java);
     java = javaTesterWithEnableAssertions(java);
     java = javaTesterWithModule(java, launcher);
+    var cached = javaTesterDoesCacheTestResults();
+    var cache = new TestResultCache(javaTesterUsesTestResultsFile());
+    var entry = launcher.toModuleAndMainClass();
+    var key = space().name() + ":java:" + entry;
+    var fingerprint = cached ? javaTesterComputeFingerprint(launcher, java) : "";
+    if (cached && cache.passed(key, fingerprint)) {
+      say("Skipped launcher %s, it passed with unchanged inputs".formatted(entry));
+      return;
+    }
     javaTesterRunJavaToolCall(java);
+    if (cached) cache.pass(key, fingerprint);
   }
 
   default List<Launcher> javaTesterUsesLaunchersForTesting() {
     return space().launchers();
   }
 
+  /**
+   * {@return {@code true} to skip launchers that passed with unchanged inputs, default: true}
+   *
+   * <p>Inputs are the module graph and {@link #javaTesterUsesTestResultInputs(Launcher)}: disable
+   * this for programs reading other inputs, or set the {@code --rerun-tests} system property.
+   *
+   * @see TestResultCache
+   */
+  default boolean javaTesterDoesCacheTestResults() {
+    return true;
+  }
+
+  default Path javaTesterUsesTestResultsFile() {
+    return workflow().folders().out("test", "results.properties");
+  }
+
+  /**
+   * {@return the files and directories read by the program started by the given launcher}
+   *
+   * @param launcher the launcher to start
+   */
+  default List<Path> javaTesterUsesTestResultInputs(Launcher launcher) {
+    var declared = space().modules().find(launcher.module());
+    return declared.map(DeclaredModule::content).map(List::of).orElse(List.of());
+  }
+
+  /**
+   * {@return the fingerprint of the launcher's module graph, the java call, and its inputs}
+   *
+   * @param launcher the launcher to compute the fingerprint for
+   * @param java the tool call starting the launcher
+   */
+  default String javaTesterComputeFingerprint(Launcher launcher, ToolCall java) {
+    var name = launcher.module();
+    var layer = space().toModuleLayer(workflow().folders(), name);
+    var module = layer.findModule(name).orElseThrow(() -> new FindException(name));
+    var inputs = javaTesterUsesTestResultInputs(launcher);
+    var digests = DigestCache.of(workflow().folders().out());
+    return TestResultCache.fingerprint(digests, module, java.toCommandLine(), inputs);
+  }
+
   default ToolCall javaTesterUsesJavaToolCall() {
     return ToolCall.of("java");
   }
@@ -10,7 +10,10 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import run.bach.Tool;
 import run.bach.ToolCall;
+import run.bach.internal.JarArchiver;
 import run.bach.workflow.Structure.DeclaredModule;
 import run.bach.workflow.Structure.Space;
 
@@ -42,6 +45,7 @@ public interface ModulesCompiler extends Action {
         jar = modulesCompilerWithFile(jar);
         jar = modulesCompilerWithModuleVersion(jar);
         jar = modulesCompilerWithDate(jar);
+        jar = modulesCompilerWithCompression(jar);
         jar = modulesCompilerWithLauncher(jar);
         jar = modulesCompilerWithBaseClassesAndResources(jar);
         jar = modulesCompilerWithClassesOfPatchedModule(jar);
@@ -57,7 +61,13 @@ public interface ModulesCompiler extends Action {
   }
 
   default ToolCall modulesCompilerUsesJarToolCall() {
-    return ToolCall.of("jar");
+    if (!modulesCompilerDoesArchiveInProcess()) return ToolCall.of("jar");
+    var level = modulesCompilerUsesCompressionLevel();
+    var cache =
+        modulesCompilerDoesArchiveIncrementally()
+            ? workflow().folders().out(space().name(), "cache", "modules")
+            : null;
+    return ToolCall.of(Tool.of(JarArchiver.provider(level, cache)));
   }
 
   default ToolCall modulesCompilerUsesJavacToolCall() {
@@ -85,6 +95,16 @@ public interface ModulesCompiler extends Action {
     return jar.add("--date", timestamp);
   }
 
+  /**
+   * {@return the jar tool call with compression-related arguments}
+   *
+   * <p>Override this method to store the entries of the current module without compressing them,
+   * for example for modules of a test space: {@code return jar.add("--no-compress");}
+   */
+  default ToolCall modulesCompilerWithCompression(ToolCall jar) {
+    return jar;
+  }
+
   default ToolCall modulesCompilerWithLauncher(ToolCall jar) {
     var space = space();
     if (space.launchers().isEmpty()) return jar;
@@ -167,6 +187,35 @@ public interface ModulesCompiler extends Action {
     run(jar);
   }
 
+  /**
+   * {@return {@code true} to write JAR files using an in-process archiver}
+   *
+   * <p>Defaults to {@code false}: the {@code jar} tool of the JDK validates the archives it
+   * creates, the in-process archiver doesn't.
+   *
+   * @see JarArchiver#provider(int, java.nio.file.Path)
+   */
+  default boolean modulesCompilerDoesArchiveInProcess() {
+    return false;
+  }
+
+  /**
+   * {@return {@code true} to skip up-to-date JAR files and to only compress changed entries}
+   *
+   * <p>Digest manifests are stored in the {@code cache/modules} folder of the space, so that the
+   * {@code modules} folder only contains JAR files.
+   *
+   * @see JarArchiver#update(java.nio.file.Path)
+   */
+  default boolean modulesCompilerDoesArchiveIncrementally() {
+    return true;
+  }
+
+  /** {@return the deflate level used by the in-process archiver, from 0 to 9, or -1} */
+  default int modulesCompilerUsesCompressionLevel() {
+    return Deflater.DEFAULT_COMPRESSION;
+  }
+
   default void modulesCompilerRunJavacToolCall(ToolCall javac) {
     run(javac);
   }
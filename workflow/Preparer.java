@@ -29,6 +29,14 @@ public interface Preparer extends Action {
       resolver.resolveMissingModules();
       recording.stop();
     }
+    if (preparerDoesVerifyModules()) {
+      log("Verifying locked modules ...");
+      resolver.verifyModules();
+    }
+  }
+
+  default boolean preparerDoesVerifyModules() {
+    return true;
   }
 
   default Path preparerUsesLibraryDirectory() {
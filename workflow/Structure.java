@@ -23,9 +23,10 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Stream;
 import run.bach.ModuleLocator;
-import run.bach.internal.ModuleDescriptorSupport;
+import run.bach.internal.ModuleDescriptorIndex;
 import run.bach.internal.ModuleDescriptorSupport.ModuleInfoReference;
 import run.bach.internal.ModuleDescriptorSupport.ModuleReferenceFinder;
+import run.bach.internal.ModuleInfoCache;
 import run.bach.internal.ModuleSourcePathSupport;
 import run.bach.internal.ModulesSupport;
 
@@ -204,15 +205,16 @@ public record Structure(Basics basics, Spaces spaces, ModuleLocator libraries) {
     }
 
     public ModuleLayer toModuleLayer(Folders folders, String module) {
+      var index = ModuleDescriptorIndex.of(folders.out());
       var finder =
           ModuleFinder.compose(
-              ModuleFinder.of(folders.out(name(), "modules", module + ".jar")),
-              ModuleFinder.of(
+              index.finder(folders.out(name(), "modules", module + ".jar")),
+              index.finder(
                   requires().names().stream()
                       .map(required -> folders.out(required, "modules"))
                       .toArray(Path[]::new)),
-              ModuleFinder.of(folders.out(name(), "modules")),
-              ModuleFinder.of(folders.root("lib")));
+              index.finder(folders.out(name(), "modules")),
+              index.finder(folders.root("lib")));
       return ModulesSupport.buildModuleLayer(finder, module);
     }
 
@@ -295,20 +297,22 @@ public record Structure(Basics basics, Spaces spaces, ModuleLocator libraries) {
     }
   }
 
+  /** A declared module, its descriptor is parsed from {@code info} on first use if {@code null}. */
   public record DeclaredModule(
       Path content, // content root of the entire module
       Path info, // "module-info.java"
-      ModuleDescriptor descriptor, // descriptor.name()
+      ModuleDescriptor descriptor, // descriptor.name(), parsed from info on demand if null
       DeclaredFolders base, // base sources and resources
       Map<Integer, DeclaredFolders> targeted)
       implements Comparable<DeclaredModule> {
     public DeclaredModule(Path content, Path info) {
-      this(
-          content,
-          info,
-          ModuleDescriptorSupport.parse(info),
-          new DeclaredFolders(info.getParent()),
-          Map.of());
+      this(content, info, null, new DeclaredFolders(info.getParent()), Map.of());
+    }
+
+    @Override
+    public ModuleDescriptor descriptor() {
+      if (descriptor != null) return descriptor;
+      return ModuleInfoCache.ofSystem().parse(info);
     }
 
     public DeclaredModule withResourcePath(Path path) {
@@ -316,7 +320,7 @@ public record Structure(Basics basics, Spaces spaces, ModuleLocator libraries) {
     }
 
     public String name() {
-      return descriptor.name();
+      return descriptor().name();
     }
 
     @Override
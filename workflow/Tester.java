@@ -5,10 +5,25 @@
 
 package run.bach.workflow;
 
+import java.lang.module.FindException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import run.bach.internal.OutputBuffers;
 import run.bach.workflow.Structure.Space;
 
 public interface Tester extends Action, JavaTester, JUnitTester, ToolTester {
+  /**
+   * A named test run.
+   *
+   * @param description the description of the test run
+   * @param runnable the code performing the test run
+   */
+  record TestRun(String description, Runnable runnable) {}
+
   default void test() {
     var spaces = testerUsesSpacesForTesting();
     if (spaces.isEmpty()) {
@@ -28,8 +43,113 @@ public interface Tester extends Action, JavaTester, JUnitTester, ToolTester {
   }
 
   default void test(Space space) {
+    if (testerDoesRunTestsConcurrently()) {
+      testConcurrently(space);
+      return;
+    }
     testViaJava(space); // java --module $MODULE
     testViaTool(space); // ToolProvider::run $MODULE/test.*
     testViaJUnit(space); // junit --select-module $MODULE
   }
+
+  default boolean testerDoesRunTestsConcurrently() {
+    return false;
+  }
+
+  default int testerUsesConcurrency() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Runs launchers, test tool providers, and JUnit module selections of a space at the same time.
+   *
+   * <p>The output of each test run is buffered and printed as a whole when the run finished. A
+   * failing test run doesn't stop the others; all failures are reported after all runs finished.
+   *
+   * @param space the module space to test
+   * @see #testerUsesConcurrency()
+   */
+  default void testConcurrently(Space space) {
+    var locals = List.of(JavaTester.SPACE, ToolTester.SPACE, JUnitTester.SPACE);
+    if (locals.stream().anyMatch(local -> local.get() != null)) throw new IllegalStateException();
+    try {
+      locals.forEach(local -> local.set(space));
+      var runs = testerUsesTestRunsForConcurrentExecution();
+      if (runs.isEmpty()) {
+        log("No test runs found in %s space".formatted(space.name()));
+        return;
+      }
+      var concurrency = Math.max(1, testerUsesConcurrency());
+      say("Running %d tests with %d concurrent threads ...".formatted(runs.size(), concurrency));
+      var permits = new Semaphore(concurrency);
+      var failures = new ConcurrentHashMap<TestRun, Throwable>();
+      var factory = Thread.ofVirtual().name("test-", 1).factory(); // inherits space context
+      try (var buffers = OutputBuffers.install();
+          var executor = Executors.newThreadPerTaskExecutor(factory)) {
+        for (var run : runs) {
+          executor.submit(() -> testConcurrently(run, buffers, permits, failures));
+        }
+      }
+      if (failures.isEmpty()) return;
+      var failed = runs.stream().filter(failures::containsKey).toList();
+      var descriptions = failed.stream().map(TestRun::description).toList();
+      var size = failed.size();
+      var message = "%d of %d test runs failed: %s".formatted(size, runs.size(), descriptions);
+      var exception = new RuntimeException(message);
+      failed.forEach(run -> exception.addSuppressed(failures.get(run)));
+      throw exception;
+    } finally {
+      locals.forEach(ThreadLocal::remove);
+    }
+  }
+
+  private void testConcurrently(
+      TestRun run, OutputBuffers buffers, Semaphore permits, Map<TestRun, Throwable> failures) {
+    permits.acquireUninterruptibly();
+    try {
+      var output =
+          buffers.capture(
+              () -> {
+                try {
+                  run.runnable().run();
+                } catch (RuntimeException | Error exception) {
+                  failures.put(run, exception);
+                }
+              });
+      var failure = failures.get(run);
+      var message =
+          failure == null
+              ? "Passed " + run.description()
+              : "FAILED " + run.description() + " -> " + failure;
+      if (output.isBlank()) say(message);
+      else say(message + System.lineSeparator() + output.indent(2).stripTrailing());
+    } finally {
+      permits.release();
+    }
+  }
+
+  /** {@return a list of all test runs of the current space, ready to be executed concurrently} */
+  default List<TestRun> testerUsesTestRunsForConcurrentExecution() {
+    var runs = new ArrayList<TestRun>();
+    for (var launcher : javaTesterUsesLaunchersForTesting()) {
+      var entry = launcher.toModuleAndMainClass();
+      runs.add(new TestRun("java --module " + entry, () -> testViaJava(launcher)));
+    }
+    for (var name : toolTesterUsesModuleNamesForTesting()) {
+      var layer = toolTesterUsesModuleLayerToFindModule(name);
+      var module = layer.findModule(name).orElseThrow(() -> new FindException(name));
+      if (!toolTesterDoesHandleModule(module)) continue;
+      for (var provider : toolTesterUsesToolProvidersForTesting(module)) {
+        var description = "tool %s of module %s".formatted(provider.name(), name);
+        runs.add(new TestRun(description, () -> testViaTool(provider)));
+      }
+    }
+    for (var name : junitTesterUsesModuleNamesForTesting()) {
+      var layer = junitTesterUsesModuleLayerToFindModule(name);
+      var module = layer.findModule(name).orElseThrow(() -> new FindException(name));
+      if (!junitTesterDoesHandleModule(module)) continue;
+      runs.add(new TestRun("junit --select-module " + name, () -> testViaJUnit(module)));
+    }
+    return List.copyOf(runs);
+  }
 }
@@ -6,12 +6,16 @@
 package run.bach.workflow;
 
 import java.lang.module.FindException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.spi.ToolProvider;
 import run.bach.Tool;
 import run.bach.ToolCall;
+import run.bach.internal.DigestCache;
+import run.bach.internal.TestResultCache;
+import run.bach.workflow.Structure.DeclaredModule;
 import run.bach.workflow.Structure.Space;
 
 public interface ToolTester extends Action {
@@ -41,20 +45,68 @@ public interface ToolTester extends Action {
   }
 
   default void testViaTool(Module module) {
-    var layer = module.getLayer();
-    var providers =
-        ServiceLoader.load(layer, ToolProvider.class).stream()
-            .filter(service -> service.type().getModule().getLayer() == layer)
-            .map(ServiceLoader.Provider::get)
-            .filter(provider -> provider.name().startsWith("test"))
-            .toList();
-    for (var provider : providers) {
-      var tool = Tool.of(provider);
-      var call = ToolCall.of(tool);
-      toolTesterRunToolCall(call);
+    for (var provider : toolTesterUsesToolProvidersForTesting(module)) {
+      testViaTool(provider);
     }
   }
 
+  default void testViaTool(ToolProvider provider) {
+    var module = provider.getClass().getModule();
+    var tool = Tool.of(provider);
+    var call = ToolCall.of(tool);
+    var cached = toolTesterDoesCacheTestResults() && module.isNamed();
+    var cache = new TestResultCache(toolTesterUsesTestResultsFile());
+    var key = space().name() + ":tool:" + module.getName() + '/' + provider.name();
+    var fingerprint = "";
+    if (cached) {
+      var inputs = toolTesterUsesTestResultInputs(module);
+      var digests = DigestCache.of(workflow().folders().out());
+      fingerprint = TestResultCache.fingerprint(digests, module, call.toCommandLine(), inputs);
+      if (cache.passed(key, fingerprint)) {
+        var message = "Skipped tool %s of module %s, it passed with unchanged inputs";
+        say(message.formatted(provider.name(), module.getName()));
+        return;
+      }
+    }
+    toolTesterRunToolCall(call);
+    if (cached) cache.pass(key, fingerprint);
+  }
+
+  default List<ToolProvider> toolTesterUsesToolProvidersForTesting(Module module) {
+    var layer = module.getLayer();
+    return ServiceLoader.load(layer, ToolProvider.class).stream()
+        .filter(service -> service.type().getModule().getLayer() == layer)
+        .map(ServiceLoader.Provider::get)
+        .filter(provider -> provider.name().startsWith("test"))
+        .toList();
+  }
+
+  /**
+   * {@return {@code true} to skip test tools that passed with unchanged inputs, default: true}
+   *
+   * <p>Inputs are the module graph and {@link #toolTesterUsesTestResultInputs(Module)}: disable
+   * this for test tools reading other inputs, or set the {@code --rerun-tests} system property.
+   *
+   * @see TestResultCache
+   */
+  default boolean toolTesterDoesCacheTestResults() {
+    return true;
+  }
+
+  /**
+   * {@return the files and directories read by the test tools of the given module}
+   *
+   * @param module the module providing test tools
+   */
+  default List<Path> toolTesterUsesTestResultInputs(Module module) {
+    var declared = space().modules().find(module.getName());
+    return declared.map(DeclaredModule::content).map(List::of).orElse(List.of());
+  }
+
+  default Path toolTesterUsesTestResultsFile() {
+    return workflow().folders().out("test", "results.properties");
+  }
+
   default List<String> toolTesterUsesModuleNamesForTesting() {
     return space().modules().names();
   }